@@ -6,15 +6,18 @@
  */
 package org.delaunois.brotherql;
 
+import lombok.Getter;
 import org.delaunois.brotherql.backend.BrotherQLDevice;
 import org.delaunois.brotherql.backend.BrotherQLDeviceFile;
 import org.delaunois.brotherql.backend.BrotherQLDeviceTcp;
 import org.delaunois.brotherql.backend.BrotherQLDeviceUsb;
-import org.delaunois.brotherql.util.BitOutputStream;
+import org.delaunois.brotherql.backend.BrotherQLStatusMonitor;
+import org.delaunois.brotherql.protocol.RasterLineEncoder;
 import org.delaunois.brotherql.util.Converter;
+import org.delaunois.brotherql.util.Parallel;
+import org.delaunois.brotherql.util.RasterPage;
 import org.delaunois.brotherql.util.Rx;
 
-import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
@@ -24,24 +27,31 @@ import java.lang.System.Logger.Level;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 
 import static org.delaunois.brotherql.protocol.QL.CMD_INITIALIZE;
 import static org.delaunois.brotherql.protocol.QL.CMD_PRINT;
 import static org.delaunois.brotherql.protocol.QL.CMD_PRINT_INFORMATION;
 import static org.delaunois.brotherql.protocol.QL.CMD_PRINT_LAST;
-import static org.delaunois.brotherql.protocol.QL.CMD_RASTER_GRAPHIC_TRANSFER;
 import static org.delaunois.brotherql.protocol.QL.CMD_RESET;
 import static org.delaunois.brotherql.protocol.QL.CMD_SET_AUTOCUT_OFF;
 import static org.delaunois.brotherql.protocol.QL.CMD_SET_AUTOCUT_ON;
+import static org.delaunois.brotherql.protocol.QL.CMD_SET_COMPRESSION_TIFF;
 import static org.delaunois.brotherql.protocol.QL.CMD_SET_CUT_PAGENUMBER;
 import static org.delaunois.brotherql.protocol.QL.CMD_SET_EXPANDED_MODE;
 import static org.delaunois.brotherql.protocol.QL.CMD_SET_MARGIN;
 import static org.delaunois.brotherql.protocol.QL.CMD_STATUS_REQUEST;
 import static org.delaunois.brotherql.protocol.QL.CMD_SWITCH_TO_RASTER;
-import static org.delaunois.brotherql.protocol.QL.CMD_TWO_COLOR_RASTER_GRAPHIC_TRANSFER_FIRST;
-import static org.delaunois.brotherql.protocol.QL.CMD_TWO_COLOR_RASTER_GRAPHIC_TRANSFER_SECOND;
 import static org.delaunois.brotherql.protocol.QL.EM_CUT_AT_END;
 import static org.delaunois.brotherql.protocol.QL.EM_HALF_CUT;
 import static org.delaunois.brotherql.protocol.QL.EM_HIGH_RESOLUTION;
@@ -69,12 +79,34 @@ public final class BrotherQLConnection implements Closeable {
     private static final int TIMEOUT = 1000;
 
     /**
-     * The print timeout in milliseconds. When printing, we expect the printer gives a feedback before this timeout.
+     * The print timeout in milliseconds, on top of the time needed to print the label at the model print speed.
+     * When printing, we expect the printer gives a feedback before this timeout.
      */
     private static final int PRINT_TIMEOUT_MS = 2000;
 
+    /**
+     * The factor applied to the time needed to print a label at the model print speed, as the printers
+     * print slower in two colors or when the print head is hot.
+     */
+    private static final int PRINT_SPEED_MARGIN = 3;
+
+    /**
+     * How long in milliseconds {@link #close()} waits for the submitted job being printed to stop,
+     * before interrupting it.
+     */
+    private static final int CLOSE_TIMEOUT_MS = 10000;
 
     private BrotherQLDevice device;
+    private ExecutorService jobExecutor;
+    private volatile Thread jobThread;
+    private volatile boolean closing;
+    private volatile BrotherQLStatusMonitor statusMonitor;
+
+    /**
+     * The last status read from the printer, or null if none.
+     */
+    @Getter
+    private volatile BrotherQLStatus lastStatus;
 
     /**
      * Construct a connection to the first USB Brother Printer found.
@@ -159,6 +191,9 @@ public final class BrotherQLConnection implements Closeable {
      * @throws BrotherQLException    if the connection could not be established
      */
     public void open() throws BrotherQLException {
+        lastStatus = null;
+        statusMonitor = null;
+        closing = false;
         device.open();
         // Initialize the printer 
         reset();
@@ -186,6 +221,26 @@ public final class BrotherQLConnection implements Closeable {
         return device.getModel();
     }
 
+    /**
+     * Start monitoring the printer status in the background (USB printers only).
+     * The statuses sent by the printer, including unsolicited ones such as an error when the cover is opened,
+     * are received as soon as sent, and the last status is updated without querying the printer.
+     * Subscribe to the returned monitor to be notified of each status.
+     * The monitor is stopped when the connection is closed.
+     * The device must be opened first.
+     *
+     * @return the status monitor, or null if the printer does not support it
+     * @throws BrotherQLException if the monitor could not be started
+     */
+    public BrotherQLStatusMonitor startStatusMonitor() throws BrotherQLException {
+        BrotherQLStatusMonitor monitor = device.startStatusMonitor();
+        if (monitor != null && monitor != statusMonitor) {
+            monitor.subscribe(status -> lastStatus = status);
+            statusMonitor = monitor;
+        }
+        return monitor;
+    }
+
     /**
      * Send to the printer a request for status and read back the status.
      * Must NOT be called while printing, otherwise the print will immediately stop.
@@ -199,6 +254,7 @@ public final class BrotherQLConnection implements Closeable {
             return new BrotherQLStatus(null, device.getModel(), Rx.msg("error.notopened"));
         }
 
+        discardPendingStatuses();
         device.write(CMD_STATUS_REQUEST, TIMEOUT);
         BrotherQLStatus status = readDeviceStatus();
         if (status == null) {
@@ -215,12 +271,16 @@ public final class BrotherQLConnection implements Closeable {
      * @return the status or null if no status were received
      */
     public BrotherQLStatus readDeviceStatus() {
+        return readDeviceStatus(TIMEOUT);
+    }
+
+    private BrotherQLStatus readDeviceStatus(long timeout) {
         if (device.isClosed()) {
             return new BrotherQLStatus(null, device.getModel(), Rx.msg("error.notopened"));
         }
 
         BrotherQLStatus brotherQLStatus;
-        ByteBuffer response = device.readStatus(TIMEOUT);
+        ByteBuffer response = device.readStatus(timeout);
 
         if (response == null) {
             return null;
@@ -229,6 +289,7 @@ public final class BrotherQLConnection implements Closeable {
             byte[] status = new byte[STATUS_SIZE];
             response.get(status);
             brotherQLStatus = new BrotherQLStatus(status, device.getModel());
+            lastStatus = brotherQLStatus;
         }
 
         LOGGER.log(Level.DEBUG, "Status is " + brotherQLStatus);
@@ -269,7 +330,135 @@ public final class BrotherQLConnection implements Closeable {
      */
     public void sendJob(BrotherQLJob job, BiFunction<Integer, BrotherQLStatus, Boolean> statusListener)
             throws BrotherQLException {
+        printJob(job, statusListener);
+    }
+
+    /**
+     * Send the given Job for printing, from the calling thread, and tell how many pages were printed.
+     *
+     * @param job            the job to print.
+     * @param statusListener a lambda called after each print (or null), see {@link #sendJob(BrotherQLJob, BiFunction)}
+     * @return the job result
+     * @throws BrotherQLException if the job is missing information, or if the printer is not ready,
+     *                            or if another print error occurred
+     */
+    BrotherQLJobResult printJob(BrotherQLJob job, BiFunction<Integer, BrotherQLStatus, Boolean> statusListener)
+            throws BrotherQLException {
+
+        BrotherQLStatus status = checkReady(job);
+        BrotherQLMedia media = getJobMedia(job, status);
+
+        List<RasterPage> pages = rasterPages(job, media);
+        checkJob(job, pages.get(0), media);
+        for (RasterPage page : pages) {
+            checkPage(page, pages.get(0), media);
+        }
+
+        return print(job, media, status, pages.size(), pages::get, statusListener);
+    }
+
+    /**
+     * Submit the given Job for printing, and return immediately.
+     * See {@link #submit(BrotherQLJob, BiFunction)}.
+     *
+     * @param job the job to print.
+     * @return a future completed with the job result once the job is printed, or completed exceptionally with
+     * a {@link BrotherQLException} if the job is missing information, or if the printer is not ready,
+     * or if another print error occurred
+     */
+    public CompletableFuture<BrotherQLJobResult> submit(BrotherQLJob job) {
+        return submit(job, null);
+    }
+
+    /**
+     * Submit the given Job for printing, and return immediately.
+     * <p>
+     * The pages are converted on the fly, with the raster executor of the job (or the common fork-join pool),
+     * while the previous pages are transferred and printed. At most <code>job.getLookAhead()</code> pages
+     * are converted ahead of the page being sent. Pages are thus checked as they are converted : a page whose
+     * size differs from the first page stops the job with an error, after the previous pages were printed.
+     * <p>
+     * The jobs submitted to a connection are sent one after another, by a thread of the connection.
+     * Closing the connection stops the job being printed after its current page, and fails the jobs not started.
+     *
+     * @param job            the job to print.
+     * @param statusListener a lambda called after each print (or null). The lambda receives as argument the page
+     *                       number that was printed (starting at 0) and the current status,
+     *                       and must return a boolean telling whether the print must continue or not.
+     *                       It is called by the thread of the connection.
+     * @return a future completed with the job result once the job is printed, or completed exceptionally with
+     * a {@link BrotherQLException} if the job is missing information, or if the printer is not ready,
+     * or if another print error occurred
+     */
+    public CompletableFuture<BrotherQLJobResult> submit(BrotherQLJob job,
+                                                        BiFunction<Integer, BrotherQLStatus, Boolean> statusListener) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                if (closing) {
+                    throw new BrotherQLException(Rx.msg("error.notopened"));
+                }
+                return printPipelined(job, statusListener);
+            } catch (BrotherQLException e) {
+                throw new CompletionException(e);
+            }
+        }, getJobExecutor());
+    }
+
+    private BrotherQLJobResult printPipelined(BrotherQLJob job,
+                                              BiFunction<Integer, BrotherQLStatus, Boolean> statusListener)
+            throws BrotherQLException {
+
+        BrotherQLStatus status = checkReady(job);
+        BrotherQLMedia media = getJobMedia(job, status);
 
+        List<BufferedImage> images = job.getImages();
+        Executor executor = job.getRasterExecutor() != null ? job.getRasterExecutor() : ForkJoinPool.commonPool();
+        // A single image is dithered by rows in parallel instead
+        Executor rowExecutor = images.size() == 1 ? job.getRasterExecutor() : null;
+        List<CompletableFuture<RasterPage>> futures = new ArrayList<>();
+
+        PageSource pages = new PageSource() {
+            private RasterPage firstPage;
+
+            @Override
+            public RasterPage page(int index) throws BrotherQLException {
+                // Convert the next pages while this one is sent and printed
+                int end = Math.min(images.size(), index + 1 + Math.max(0, job.getLookAhead()));
+                for (int k = futures.size(); k < end; k++) {
+                    BufferedImage image = images.get(k);
+                    futures.add(CompletableFuture.supplyAsync(() -> raster(job, image, media, rowExecutor), executor));
+                }
+
+                RasterPage page;
+                try {
+                    page = futures.get(index).join();
+                } catch (CompletionException e) {
+                    throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                }
+                futures.set(index, null);
+
+                if (firstPage == null) {
+                    firstPage = page;
+                    checkJob(job, page, media);
+                }
+                checkPage(page, firstPage, media);
+                return page;
+            }
+        };
+
+        try {
+            return print(job, media, status, images.size(), pages, statusListener);
+        } finally {
+            // Pages not yet started are not converted if the print stopped early
+            for (CompletableFuture<RasterPage> future : futures) {
+                if (future != null) {
+                    future.cancel(false);
+                }
+            }
+        }
+    }
+
+    private BrotherQLStatus checkReady(BrotherQLJob job) throws BrotherQLException {
         if (device.isClosed()
                 || device.getModel() == null
                 || device.getModel().equals(BrotherQLModel.UNKNOWN)) {
@@ -288,37 +477,34 @@ public final class BrotherQLConnection implements Closeable {
         if (status.getStatusType() != BrotherQLStatusType.READY) {
             throw new BrotherQLException(Rx.msg("error.notready"));
         }
+        return status;
+    }
 
+    private BrotherQLMedia getJobMedia(BrotherQLJob job, BrotherQLStatus status) throws BrotherQLException {
         BrotherQLMedia media = device.isUsbPrinter() ? getMediaDefinition(status) : job.getMedia();
         if (media == null) {
             throw new BrotherQLException(Rx.msg("mediatype.unknown"));
         }
+        return media;
+    }
 
-        boolean twoColor = media.twoColor && device.getModel().twoColor;
-        List<BufferedImage> images = raster(job);
-        checkJob(job, images, media);
-        sendControlCode(images, job, media);
-
-        for (int i = 0; i < images.size(); i++) {
-
-            sendPrintData(images.get(i), media, twoColor);
+    private BrotherQLJobResult print(BrotherQLJob job, BrotherQLMedia media, BrotherQLStatus status, int pageCount,
+                                     PageSource pages, BiFunction<Integer, BrotherQLStatus, Boolean> statusListener)
+            throws BrotherQLException {
 
-            boolean last = i == images.size() - 1;
-            byte[] pc = last ? CMD_PRINT_LAST : CMD_PRINT;
+        boolean twoColor = media.twoColor && device.getModel().twoColor;
+        boolean compress = job.isCompress() && device.getModel().compression;
+        RasterPage firstPage = pages.page(0);
+        sendControlCode(firstPage, job, media, compress);
 
-            device.write(pc, TIMEOUT);
+        int printed = 0;
+        for (int i = 0; i < pageCount; i++) {
 
-            if (device.isUsbPrinter()) {
-                // For USB printers, a status is returned when the device starts printing
-                // Should read PHASE_CHANGE PHASE_PRINTING
-                status = readDeviceStatus();
-                int timeleft = PRINT_TIMEOUT_MS;
-                while (timeleft > 0 && (status == null || BrotherQLPhaseType.PHASE_PRINTING.equals(status.getPhaseType()))) {
-                    timeleft -= 200;
-                    sleep(200);
-                    status = readDeviceStatus();
-                }
-            }
+            RasterPage page = i == 0 ? firstPage : pages.page(i);
+            boolean last = i == pageCount - 1;
+            long printTimeout = device.isUsbPrinter() ? getPrintTimeout(page, job.isDpi600()) : PRINT_TIMEOUT_MS;
+            status = printPage(job, page, last, media, twoColor, compress, printTimeout, status);
+            printed++;
 
             if (statusListener != null) {
                 if (!statusListener.apply(i, status)) {
@@ -326,12 +512,72 @@ public final class BrotherQLConnection implements Closeable {
                 }
             }
 
-            if (shouldStopPrint(status)) {
+            if (shouldStopPrint(status, printTimeout)) {
+                break;
+            }
+
+            if (closing) {
+                LOGGER.log(Level.INFO, "Connection closed. Stop printing.");
                 break;
             }
 
             sleep(job.getDelay());
         }
+        return new BrotherQLJobResult(pageCount, printed, status);
+    }
+
+    /**
+     * Send a page and, for USB printers, wait until printed.
+     * If the printer is disconnected meanwhile and the job allows it, wait for the printer to be connected again,
+     * then send the page again, since it was not confirmed as printed.
+     *
+     * @return the status after the print
+     */
+    private BrotherQLStatus printPage(BrotherQLJob job, RasterPage page, boolean last, BrotherQLMedia media,
+                                      boolean twoColor, boolean compress, long printTimeout, BrotherQLStatus status)
+            throws BrotherQLException {
+        while (true) {
+            try {
+                sendPrintData(page, media, twoColor, compress, last ? CMD_PRINT_LAST : CMD_PRINT);
+                if (!device.isUsbPrinter()) {
+                    return status;
+                }
+                BrotherQLStatus printedStatus = waitPrinted(printTimeout);
+                if (job.getReconnectTimeout() <= 0 || !device.isDisconnected()) {
+                    return printedStatus;
+                }
+            } catch (BrotherQLException e) {
+                if (job.getReconnectTimeout() <= 0 || !device.isDisconnected()) {
+                    throw e;
+                }
+            }
+
+            LOGGER.log(Level.WARNING, "Printer disconnected, waiting " + job.getReconnectTimeout() + " ms for it");
+            if (!device.reconnect(job.getReconnectTimeout())) {
+                throw new BrotherQLException(Rx.msg("libusb.nodevice"));
+            }
+            resume(job, page, media, compress);
+        }
+    }
+
+    /**
+     * Prepare a printer connected again to resume the job from the given page.
+     */
+    private void resume(BrotherQLJob job, RasterPage page, BrotherQLMedia media, boolean compress)
+            throws BrotherQLException {
+        boolean monitored = statusMonitor != null;
+        statusMonitor = null;
+        lastStatus = null;
+        reset();
+        if (monitored) {
+            startStatusMonitor();
+        }
+
+        BrotherQLStatus status = checkReady(job);
+        if (getJobMedia(job, status) != media) {
+            throw new BrotherQLException(Rx.msg("error.mediachanged"));
+        }
+        sendControlCode(page, job, media, compress);
     }
 
     /**
@@ -344,76 +590,258 @@ public final class BrotherQLConnection implements Closeable {
      * @return the rastered images
      */
     public static List<BufferedImage> raster(BrotherQLJob job) {
-        List<BufferedImage> images = job.getImages();
         List<BufferedImage> convertedImages = new ArrayList<>();
+        for (RasterPage page : rasterPages(job, null)) {
+            convertedImages.add(page.toImage());
+        }
+        return convertedImages;
+    }
 
-        for (BufferedImage image : images) {
-            BufferedImage converted = image;
-            
-            // Blend alpha pixels to white background
-            converted = Converter.removeAlpha(converted);
-
-            int bodyLengthPx = image.getHeight();
-            int bodyWidthPx = image.getWidth();
-            
-            if (job.getBrightness() != 1.0f) {
-                converted = Converter.brightness(converted, job.getBrightness());
+    /**
+     * Convert the job images to packed raster pages according to the batch options
+     * (dithering, brightness, threshold, rotation...).
+     * The pages are ready to be sent to the printer : the margins of the given media are applied.
+     * If dpi600 option is set, the image width will be divided by 2.
+     * If a raster executor is set on the job, the images are converted in parallel, and the pages are
+     * returned in the order of the images. A job with a single image (e.g. a long continuous label)
+     * is dithered with its rows processed in parallel instead.
+     *
+     * @param job   the job
+     * @param media the media defining the margins, or null for no margins
+     * @return the raster pages
+     */
+    public static List<RasterPage> rasterPages(BrotherQLJob job, BrotherQLMedia media) {
+        List<BufferedImage> images = job.getImages();
+        Executor executor = job.getRasterExecutor();
+        int workers = Math.min(job.getRasterParallelism(), images.size());
+
+        if (executor == null || workers <= 1) {
+            // A single image is dithered by rows in parallel instead
+            Executor rowExecutor = images.size() == 1 ? executor : null;
+            List<RasterPage> pages = new ArrayList<>();
+            for (BufferedImage image : images) {
+                pages.add(raster(job, image, media, rowExecutor));
             }
+            return pages;
+        }
 
-            if (job.isDpi600()) {
-                // High DPI : divide width by 2 (300dpi) but preserve height (600 dpi)
-                converted = Converter.scale(converted, bodyWidthPx / 2, bodyLengthPx);
+        // Each worker takes the next image to convert, the calling thread being one of them.
+        // Pages are stored by image index so that the order is preserved.
+        RasterPage[] pages = new RasterPage[images.size()];
+        AtomicInteger next = new AtomicInteger();
+        Runnable worker = () -> {
+            int i;
+            while ((i = next.getAndIncrement()) < pages.length) {
+                try {
+                    pages[i] = raster(job, images.get(i), media, null);
+                } catch (RuntimeException | Error e) {
+                    // Stop the other workers
+                    next.set(pages.length);
+                    throw e;
+                }
             }
+        };
 
-            if (job.getRotate() != 0) {
-                converted = Converter.rotate(converted, job.getRotate());
-            }
+        Parallel.run(executor, workers, worker);
 
-            if (job.getMedia() != null && job.getMedia().twoColor) {
-                BufferedImage[] layers = Converter.extractLayer(converted,
-                        color -> color.r == 255 && Math.abs(color.g - color.b) < 10); 
-                
-                BufferedImage redLayer = layers[0];
-                BufferedImage blackLayer = layers[1];
-                if (job.isDither()) {
-                    redLayer = Converter.floydSteinbergDithering(redLayer, Converter.PALETTE_RED_WHITE);
-                    blackLayer = Converter.floydSteinbergDithering(blackLayer, Converter.PALETTE_BLACK_WHITE);
+        return new ArrayList<>(Arrays.asList(pages));
+    }
+
+    private static RasterPage raster(BrotherQLJob job, BufferedImage image, BrotherQLMedia media,
+                                     Executor executor) {
+        int parallelism = job.getRasterParallelism();
+        boolean twoColor = job.getMedia() != null && job.getMedia().twoColor;
+        boolean transform = job.isDpi600() || job.getRotate() % 360 != 0;
+
+        if (!transform) {
+            // Alpha blending, brightness and conversion in a single pass
+            RasterPage page = newPage(image.getWidth(), image.getHeight(), media, twoColor);
+            float brightness = job.getBrightness();
+            if (twoColor) {
+                if (job.isOrderedDither()) {
+                    Converter.twoColorOrderedDithering(image, brightness, page);
+                } else if (job.isDither()) {
+                    Converter.twoColorDithering(image, brightness, page, executor, parallelism);
                 } else {
-                    redLayer = Converter.threshold(redLayer, job.getThreshold(), Color.RED, Color.WHITE);
-                    blackLayer = Converter.threshold(blackLayer, job.getThreshold(), Color.BLACK, Color.WHITE);
-                }                
-                converted = Converter.merge(blackLayer, redLayer);
-                
+                    Converter.twoColorThreshold(image, brightness, job.getThreshold(), page);
+                }
             } else {
-                if (job.isDither()) {
-                    converted = Converter.floydSteinbergDithering(converted, Converter.PALETTE_BLACK_WHITE);
+                if (job.isOrderedDither()) {
+                    Converter.orderedDithering(image, brightness, Converter.PALETTE_BLACK_WHITE,
+                            page, RasterPage.BLACK);
+                } else if (job.isDither()) {
+                    Converter.floydSteinbergDithering(image, brightness, Converter.PALETTE_BLACK_WHITE,
+                            page, RasterPage.BLACK, executor, parallelism);
                 } else {
-                    converted = Converter.threshold(converted, job.getThreshold());
-                }                
+                    Converter.threshold(image, brightness, job.getThreshold(), page, RasterPage.BLACK);
+                }
             }
+            return page;
+        }
+
+        // Blend alpha pixels to white background and apply brightness
+        BufferedImage converted = Converter.preprocess(image, job.getBrightness());
 
-            convertedImages.add(converted);
+        if (job.isDpi600()) {
+            // High DPI : divide width by 2 (300dpi) but preserve height (600 dpi)
+            converted = Converter.scale(converted, image.getWidth() / 2, image.getHeight());
         }
 
-        return convertedImages;
+        if (job.getRotate() != 0) {
+            converted = Converter.rotate(converted, job.getRotate());
+        }
+
+        RasterPage page = newPage(converted.getWidth(), converted.getHeight(), media, twoColor);
+
+        if (twoColor) {
+            if (job.isOrderedDither()) {
+                Converter.twoColorOrderedDithering(converted, page);
+            } else if (job.isDither()) {
+                Converter.twoColorDithering(converted, page, executor, parallelism);
+            } else {
+                Converter.twoColorThreshold(converted, job.getThreshold(), page);
+            }
+        } else {
+            if (job.isOrderedDither()) {
+                Converter.orderedDithering(converted, Converter.PALETTE_BLACK_WHITE, page, RasterPage.BLACK);
+            } else if (job.isDither()) {
+                Converter.floydSteinbergDithering(converted, Converter.PALETTE_BLACK_WHITE, page, RasterPage.BLACK,
+                        executor, parallelism);
+            } else {
+                Converter.threshold(converted, job.getThreshold(), page, RasterPage.BLACK);
+            }
+        }
+
+        return page;
+    }
+
+    private static RasterPage newPage(int width, int height, BrotherQLMedia media, boolean twoColor) {
+        return media == null
+                ? new RasterPage(width, height, twoColor)
+                : new RasterPage(width, height, media.leftMarginPx, media.rightMarginPx, twoColor);
     }
 
     /**
      * Close the printer connection.
      * Should be closed before your application exits.
+     * A submitted job being printed is stopped after its current page, and the device is closed once it stopped,
+     * or after a delay. The submitted jobs not started fail.
      */
     public void close() {
+        closing = true;
+        ExecutorService executor;
+        synchronized (this) {
+            executor = jobExecutor;
+            jobExecutor = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            if (Thread.currentThread() != jobThread) {
+                awaitJobs(executor);
+            }
+        }
         device.close();
     }
 
-    private boolean shouldStopPrint(BrotherQLStatus status) {
+    private static void awaitJobs(ExecutorService executor) {
+        try {
+            if (executor.awaitTermination(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+            LOGGER.log(Level.WARNING, "Print job did not stop within " + CLOSE_TIMEOUT_MS + " ms. Interrupting it.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // The jobs not started fail immediately, so that their future completes
+        for (Runnable job : executor.shutdownNow()) {
+            job.run();
+        }
+        try {
+            executor.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void discardPendingStatuses() {
+        // Statuses received by the monitor before a command are not an answer to it
+        BrotherQLStatusMonitor monitor = statusMonitor;
+        if (monitor != null) {
+            monitor.discardPending();
+        }
+    }
+
+    private synchronized ExecutorService getJobExecutor() {
+        if (jobExecutor == null) {
+            jobExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "brotherql-job");
+                thread.setDaemon(true);
+                jobThread = thread;
+                return thread;
+            });
+        }
+        return jobExecutor;
+    }
+
+    /**
+     * Wait until the printer reports the end of the print of a page.
+     * The printer sends a status when it starts printing (phase change to printing), and another one when
+     * it is done (phase change to waiting to receive). Each read blocks until the printer sends a status,
+     * or until the deadline. The wait stops early when the printer is disconnected, or when a read fails
+     * before its timeout, e.g. on a transfer error.
+     *
+     * @param timeout the maximum time to wait in milliseconds
+     * @return the last status received, or null if none
+     */
+    private BrotherQLStatus waitPrinted(long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        BrotherQLStatus status = null;
+        long remaining = timeout;
+        while (remaining > 0) {
+            BrotherQLStatus received = readDeviceStatus(remaining);
+            if (received != null) {
+                status = received;
+                if (!BrotherQLPhaseType.PHASE_PRINTING.equals(status.getPhaseType())) {
+                    break;
+                }
+            }
+            if (device.isDisconnected()) {
+                break;
+            }
+            long now = System.currentTimeMillis();
+            if (received == null && now < deadline) {
+                LOGGER.log(Level.WARNING, "Could not read the printer status. Stop waiting for the print.");
+                break;
+            }
+            remaining = deadline - now;
+        }
+        return status;
+    }
+
+    /**
+     * Compute how long the printer may take to print a page, from the page length and the model print speed.
+     *
+     * @param page   the page
+     * @param dpi600 whether the page is printed at 600 dpi in length
+     * @return the timeout in milliseconds
+     */
+    private long getPrintTimeout(RasterPage page, boolean dpi600) {
+        int speed = device.getModel().printSpeed;
+        if (speed <= 0) {
+            return PRINT_TIMEOUT_MS;
+        }
+        double lengthMm = page.getHeight() * 25.4 / (dpi600 ? 600 : 300);
+        return PRINT_TIMEOUT_MS + (long) (lengthMm * 1000 * PRINT_SPEED_MARGIN / speed);
+    }
+
+    private boolean shouldStopPrint(BrotherQLStatus status, long printTimeout) {
         if (status == null) {
-            LOGGER.log(Level.WARNING, "Could not get printer status within " + PRINT_TIMEOUT_MS + " ms. Stop printing.");
+            LOGGER.log(Level.WARNING, "Could not get printer status within " + printTimeout + " ms. Stop printing.");
             return true;
         }
 
         if (BrotherQLPhaseType.PHASE_PRINTING.equals(status.getPhaseType())) {
-            LOGGER.log(Level.WARNING, "Printer did not finish printing within " + PRINT_TIMEOUT_MS + " ms. Stop printing.");
+            LOGGER.log(Level.WARNING, "Printer did not finish printing within " + printTimeout + " ms. Stop printing.");
             return true;
         }
 
@@ -430,10 +858,9 @@ public final class BrotherQLConnection implements Closeable {
         return false;
     }
 
-    private void checkJob(BrotherQLJob job, List<BufferedImage> images, BrotherQLMedia media) throws BrotherQLException {
-        BufferedImage img = images.get(0);
-        int bodyLengthPx = img.getHeight();
-        int bodyWidthPx = img.getWidth();
+    private void checkJob(BrotherQLJob job, RasterPage firstPage, BrotherQLMedia media) throws BrotherQLException {
+        int bodyLengthPx = firstPage.getHeight();
+        int bodyWidthPx = firstPage.getWidth();
         int expectedBodyLengthPx = job.isDpi600() ? media.bodyLengthPx * 2 : media.bodyLengthPx;
         int expectedBodyWidthPx = media.bodyWidthPx;
         LOGGER.log(Level.DEBUG, "Image size: " + bodyWidthPx + " x " + bodyLengthPx);
@@ -462,16 +889,18 @@ public final class BrotherQLConnection implements Closeable {
             }
         }
 
-        for (BufferedImage image : images) {
-            boolean isContinuous = BrotherQLMediaType.CONTINUOUS_LENGTH_TAPE.equals(media.mediaType);
-            if ((!isContinuous && (image.getHeight() != bodyLengthPx || image.getWidth() != bodyWidthPx)) ||
-                    (isContinuous && (image.getWidth() != bodyWidthPx))) {
-                throw new BrotherQLException(String.format(Rx.msg("error.img.vary")));
-            }
+    }
+
+    private void checkPage(RasterPage page, RasterPage firstPage, BrotherQLMedia media) throws BrotherQLException {
+        boolean isContinuous = BrotherQLMediaType.CONTINUOUS_LENGTH_TAPE.equals(media.mediaType);
+        if ((!isContinuous && (page.getHeight() != firstPage.getHeight() || page.getWidth() != firstPage.getWidth())) ||
+                (isContinuous && (page.getWidth() != firstPage.getWidth()))) {
+            throw new BrotherQLException(String.format(Rx.msg("error.img.vary")));
         }
     }
 
-    private void sendControlCode(List<BufferedImage> images, BrotherQLJob job, BrotherQLMedia media) throws BrotherQLException {
+    private void sendControlCode(RasterPage firstPage, BrotherQLJob job, BrotherQLMedia media, boolean compress)
+            throws BrotherQLException {
         try {
             ByteArrayOutputStream bos = new ByteArrayOutputStream();
 
@@ -483,7 +912,7 @@ public final class BrotherQLConnection implements Closeable {
             }
             bos.write(pi); // {n1}
 
-            int bodyLengthPx = images.get(0).getHeight();
+            int bodyLengthPx = firstPage.getHeight();
             bos.write(media.mediaType.code); // {n2}
             bos.write(media.labelWidthMm & 0xFF); // {n3}
             bos.write(media.labelLengthMm & 0xFF); // {n4}
@@ -526,6 +955,11 @@ public final class BrotherQLConnection implements Closeable {
             bos.write(feedAmount & 0xFF);
             bos.write((feedAmount >> 8) & 0xFF);
 
+            // Set compression mode
+            if (compress) {
+                bos.write(CMD_SET_COMPRESSION_TIFF);
+            }
+
             byte[] bytes = bos.toByteArray();
             device.write(bytes, TIMEOUT);
         } catch (IOException e) {
@@ -543,55 +977,46 @@ public final class BrotherQLConnection implements Closeable {
         }
     }
 
-    private void sendPrintData(BufferedImage img, BrotherQLMedia media, boolean twoColor) throws BrotherQLException {
+    /**
+     * Send the raster lines of a page followed by the print command.
+     * The last chunk of lines and the print command are sent with a single gathering write.
+     */
+    private void sendPrintData(RasterPage page, BrotherQLMedia media, boolean twoColor, boolean compress,
+                               byte[] printCommand) throws BrotherQLException {
+        RasterLineEncoder encoder = new RasterLineEncoder(media, twoColor, compress);
+
+        // Gather the lines in chunks of the preferred size, or write them one by one
+        int preferredSize = device.getPreferredWriteSize();
+        int maxLineLength = encoder.getMaxLineLength();
+        int chunkSize = Math.max(preferredSize, maxLineLength);
+        ByteBuffer chunk = device.acquireBuffer(chunkSize);
         try {
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            BitOutputStream bitOutputStream = new BitOutputStream(bos);
-
-            for (int y = 0; y < img.getHeight(); y++) {
-                bos.reset();
-
-                if (twoColor) {
-                    bos.write(CMD_TWO_COLOR_RASTER_GRAPHIC_TRANSFER_FIRST);
-                    bos.write(media.rgtSizeBytes);
-                    writeColorData(bitOutputStream, media, img, y, 0x0);
-
-                    bos.write(CMD_TWO_COLOR_RASTER_GRAPHIC_TRANSFER_SECOND);
-                    bos.write(media.rgtSizeBytes);
-                    writeColorData(bitOutputStream, media, img, y, 0xFF0000);
-
-                } else {
-                    bos.write(CMD_RASTER_GRAPHIC_TRANSFER);
-                    bos.write(media.rgtSizeBytes);
-                    writeColorData(bitOutputStream, media, img, y, 0x0);
+            for (int y = 0; y < page.getHeight(); y++) {
+                if (chunk.remaining() < maxLineLength) {
+                    flush(chunk, chunkSize);
+                }
+                encoder.encode(page, y, chunk);
+                if (preferredSize <= 0) {
+                    flush(chunk, chunkSize);
                 }
-
-                bitOutputStream.close();
-                byte[] bitRaster = bos.toByteArray();
-                device.write(bitRaster, TIMEOUT);
             }
-        } catch (IOException e) {
-            throw new BrotherQLException(Rx.msg("error.senderror"), e);
-        }
-    }
 
-    private void writeColorData(BitOutputStream bitOutputStream, BrotherQLMedia media, BufferedImage img, int rasterLine, int color) throws IOException {
-        // Note : write is done right to left wrt to pixels !
-        writeMargin(bitOutputStream, media.rightMarginPx);
-
-        for (int x = media.bodyWidthPx - 1; x >= 0; x--) {
-            // 0 means do not print the dot, 1 means print the dot, so negate the masked color
-            int rgb = img.getRGB(x, rasterLine) & 0xFFFFFF;
-            bitOutputStream.write((rgb == color) ? 1 : 0);
+            discardPendingStatuses();
+            if (chunk.position() > 0) {
+                chunk.flip();
+                device.write(new ByteBuffer[]{chunk, ByteBuffer.wrap(printCommand)}, TIMEOUT);
+            } else {
+                device.write(printCommand, TIMEOUT);
+            }
+        } finally {
+            device.releaseBuffer(chunk);
         }
-
-        writeMargin(bitOutputStream, media.leftMarginPx);
     }
 
-    private void writeMargin(BitOutputStream bitOutputStream, int numBits) throws IOException {
-        for (int i = 0; i < numBits; i++) {
-            bitOutputStream.write(0);
-        }
+    private void flush(ByteBuffer chunk, int chunkSize) throws BrotherQLException {
+        chunk.flip();
+        device.write(chunk, TIMEOUT);
+        chunk.clear().limit(chunkSize);
     }
 
     private void sleep(int millis) {
@@ -606,4 +1031,11 @@ public final class BrotherQLConnection implements Closeable {
         }
     }
 
+    /**
+     * Gives the pages of a job by index, in order.
+     */
+    private interface PageSource {
+        RasterPage page(int index) throws BrotherQLException;
+    }
+
 }
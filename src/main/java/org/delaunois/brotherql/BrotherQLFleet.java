@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2024 Cédric de Launois
+ * See LICENSE for licensing information.
+ *
+ * Java USB Driver for printing with Brother QL printers.
+ */
+package org.delaunois.brotherql;
+
+import lombok.Getter;
+import org.delaunois.brotherql.util.Rx;
+
+import java.io.Closeable;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A fleet of many printers, typically network printers (<code>tcp://</code>), sharing a few threads.
+ * <p>
+ * Unlike the default {@link BrotherQLSpooler}, which dedicates a platform thread to each printer, the fleet does
+ * not keep any thread per printer. The fleet is a spooler whose printer sessions run on a shared executor :
+ * the jobs of a printer are printed one after another by a session task, started when a job is queued and
+ * ending when the queue of the printer is empty.
+ * On Java 21 or later, each session task runs on its own virtual thread, so that hundreds of printers
+ * can block on socket I/O at the same time at the cost of a few carrier threads.
+ * On older JVMs, the sessions share a bounded pool of platform threads : a session waits for a free thread
+ * before printing.
+ * <p>
+ * The fleet opens the connection to a printer when its first job is printed, and keeps it open until
+ * the fleet is closed or a job fails. The fleet is thread-safe.
+ *
+ * @author Cedric de Launois
+ */
+public class BrotherQLFleet implements Closeable {
+
+    private static final Logger LOGGER = System.getLogger(BrotherQLFleet.class.getName());
+
+    /**
+     * The default number of platform threads used on JVMs without virtual threads.
+     */
+    public static final int DEFAULT_PLATFORM_THREADS = 16;
+
+    private final ExecutorService executor;
+    private final BrotherQLSpooler spooler;
+    private volatile boolean closed = false;
+
+    /**
+     * True if the printer sessions run on virtual threads, false if they run on a pool of platform threads.
+     */
+    @Getter
+    private final boolean virtual;
+
+    /**
+     * Construct a fleet with the default queue capacity and the default number of platform threads.
+     */
+    public BrotherQLFleet() {
+        this(BrotherQLSpooler.DEFAULT_QUEUE_CAPACITY, DEFAULT_PLATFORM_THREADS);
+    }
+
+    /**
+     * Construct a fleet.
+     *
+     * @param queueCapacity   the maximum number of jobs waiting in the queue of each printer
+     * @param platformThreads the number of platform threads shared by the printers, when virtual
+     *                        threads are not available
+     */
+    public BrotherQLFleet(int queueCapacity, int platformThreads) {
+        this(queueCapacity, platformThreads, BrotherQLConnection::new);
+    }
+
+    /**
+     * Construct a fleet, creating the printer connections with the given factory.
+     *
+     * @param queueCapacity     the maximum number of jobs waiting in the queue of each printer
+     * @param platformThreads   the number of platform threads shared by the printers, when virtual
+     *                          threads are not available
+     * @param connectionFactory the factory creating a connection from a printer identifier.
+     *                          The fleet opens and closes the connections.
+     */
+    public BrotherQLFleet(int queueCapacity, int platformThreads,
+                          Function<String, BrotherQLConnection> connectionFactory) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+        if (platformThreads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+
+        ExecutorService virtualExecutor = newVirtualThreadExecutor();
+        this.virtual = virtualExecutor != null;
+        this.executor = virtual ? virtualExecutor : newPlatformThreadExecutor(platformThreads);
+        this.spooler = new BrotherQLSpooler(queueCapacity, connectionFactory, executor);
+        LOGGER.log(Level.DEBUG, "Fleet sessions run on " + (virtual ? "virtual threads" : platformThreads + " platform threads"));
+    }
+
+    /**
+     * Queue a job for the given printer.
+     *
+     * @param printer the printer identifier, e.g. <code>tcp://192.168.1.21</code>
+     * @param job     the job to print
+     * @return a future completed with the job result once printed
+     * @throws BrotherQLException if the queue of the printer is full, or if the fleet is closed
+     */
+    public CompletableFuture<BrotherQLJobResult> submit(String printer, BrotherQLJob job) throws BrotherQLException {
+        return submit(printer, job, null);
+    }
+
+    /**
+     * Queue a job for the given printer.
+     * <p>
+     * Cancelling the returned future before the job is started removes the job from the queue.
+     *
+     * @param printer        the printer identifier, e.g. <code>tcp://192.168.1.21</code>
+     * @param job            the job to print
+     * @param statusListener a lambda called after each print (or null),
+     *                       see {@link BrotherQLConnection#sendJob(BrotherQLJob, BiFunction)}
+     * @return a future completed with the job result once printed
+     * @throws BrotherQLException if the queue of the printer is full, or if the fleet is closed
+     */
+    public CompletableFuture<BrotherQLJobResult> submit(String printer, BrotherQLJob job,
+                                                        BiFunction<Integer, BrotherQLStatus, Boolean> statusListener)
+            throws BrotherQLException {
+        if (closed) {
+            throw new BrotherQLException(Rx.msg("error.fleetclosed"));
+        }
+        return spooler.submit(printer, job, statusListener).getResult();
+    }
+
+    /**
+     * Get the identifiers of the printers which received a job so far.
+     *
+     * @return the printer identifiers
+     */
+    public List<String> getPrinters() {
+        return spooler.getPrinters();
+    }
+
+    /**
+     * Get the number of jobs waiting in the queue of the given printer, the job being printed excluded.
+     *
+     * @param printer the printer identifier
+     * @return the number of queued jobs
+     */
+    public int getQueueSize(String printer) {
+        return spooler.getQueueSize(printer);
+    }
+
+    /**
+     * Close the fleet. The queued jobs are cancelled, the jobs being printed stop after the current page,
+     * and the printer connections are closed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        spooler.close();
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.log(Level.WARNING, "Fleet sessions still running after close");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Create an executor starting a virtual thread per task, if the JVM supports it.
+     * The library targets Java 11, so the executor is obtained by reflection.
+     *
+     * @return the executor, or null if virtual threads are not available
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java < 21, or virtual threads not enabled (preview on Java 19 and 20)
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformThreadExecutor(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread t = new Thread(r, "brotherql-fleet-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        return Executors.newFixedThreadPool(threads, threadFactory);
+    }
+
+}
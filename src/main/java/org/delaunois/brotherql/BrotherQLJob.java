@@ -13,6 +13,7 @@ import lombok.experimental.Accessors;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * A job for a Brother QL printer.
@@ -76,6 +77,14 @@ public class BrotherQLJob {
      */
     private boolean dither = true;
 
+    /**
+     * Whether to apply ordered dithering (8x8 Bayer matrix) instead of Floyd-Steinberg dithering or threshold
+     * when converting images to monochrome B/W. Much faster than Floyd-Steinberg dithering, with a visible
+     * regular pattern. If true, dither and threshold are meaningless.
+     * Default is false.
+     */
+    private boolean orderedDither = false;
+
     /**
      * Brightness factor applied before dithering. Higher means brighter.
      * Default is 1.0. For images, it is advised to set it higher, for example 1.8f, i.e. 
@@ -107,4 +116,70 @@ public class BrotherQLJob {
      */
     private BrotherQLMedia media;
 
+    /**
+     * Whether to compress the raster data sent to the printer (TIFF PackBits compression).
+     * Only used when the printer model supports it, see {@link BrotherQLModel#compression}.
+     * Compression greatly reduces the amount of data to transfer for labels with blank areas.
+     * Default is true.
+     */
+    private boolean compress = true;
+
+    /**
+     * The executor used to convert the images of the job in parallel (e.g. a {@link java.util.concurrent.ForkJoinPool}).
+     * The calling thread also takes part in the conversion.
+     * When the job has a single image, the image rows are dithered in parallel instead.
+     * Default is null, i.e. the images are converted one after another by the calling thread.
+     */
+    private Executor rasterExecutor;
+
+    /**
+     * The maximum number of images (or rows of a single image) converted at the same time when a raster
+     * executor is set, including the calling thread.
+     * Default is the number of available processors.
+     */
+    private int rasterParallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The maximum number of pages converted ahead of the page being sent to the printer, when the job is
+     * submitted with {@link BrotherQLConnection#submit(BrotherQLJob)}.
+     * Pages are converted with the raster executor, or the common fork-join pool if not set.
+     * Default is 2.
+     */
+    private int lookAhead = 2;
+
+    /**
+     * How long in ms to wait for a USB printer disconnected during the job (e.g. unplugged or switched off)
+     * to be connected again. The job then resumes from the first page not printed.
+     * Default is 0, i.e. the job fails as soon as the printer is disconnected.
+     */
+    private long reconnectTimeout = 0;
+
+    /**
+     * Create a copy of this job, with all its options, printing the given images.
+     *
+     * @param images the images of the new job
+     * @return the new job
+     */
+    public BrotherQLJob copy(List<BufferedImage> images) {
+        return new BrotherQLJob()
+                .setAutocut(autocut)
+                .setHalfcut(halfcut)
+                .setCutEach(cutEach)
+                .setImages(images)
+                .setFeedAmount(feedAmount)
+                .setDelay(delay)
+                .setThreshold(threshold)
+                .setDither(dither)
+                .setOrderedDither(orderedDither)
+                .setBrightness(brightness)
+                .setRotate(rotate)
+                .setDpi600(dpi600)
+                .setMedia(media)
+                .setCompress(compress)
+                .setRasterExecutor(rasterExecutor)
+                .setRasterParallelism(rasterParallelism)
+                .setLookAhead(lookAhead)
+                .setReconnectTimeout(reconnectTimeout);
+    }
+
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2024 Cédric de Launois
+ * See LICENSE for licensing information.
+ *
+ * Java USB Driver for printing with Brother QL printers.
+ */
+package org.delaunois.brotherql;
+
+import lombok.Getter;
+
+/**
+ * The outcome of a print job.
+ *
+ * @author Cedric de Launois
+ */
+public class BrotherQLJobResult {
+
+    /**
+     * The number of pages of the job.
+     */
+    @Getter
+    private final int pageCount;
+
+    /**
+     * The number of pages sent to the printer. Less than the page count if the print was stopped,
+     * either by the status listener or because of the printer status.
+     */
+    @Getter
+    private final int pagesPrinted;
+
+    /**
+     * The last printer status read, or null if no status could be read.
+     */
+    @Getter
+    private final BrotherQLStatus status;
+
+    /**
+     * Construct a job result.
+     *
+     * @param pageCount    the number of pages of the job
+     * @param pagesPrinted the number of pages sent to the printer
+     * @param status       the last printer status read
+     */
+    public BrotherQLJobResult(int pageCount, int pagesPrinted, BrotherQLStatus status) {
+        this.pageCount = pageCount;
+        this.pagesPrinted = pagesPrinted;
+        this.status = status;
+    }
+
+    /**
+     * Tells whether all the pages of the job were printed.
+     *
+     * @return true if the job was printed completely
+     */
+    public boolean isComplete() {
+        return pagesPrinted == pageCount;
+    }
+
+    @Override
+    public String toString() {
+        return "pagesPrinted=" + pagesPrinted + "/" + pageCount + " status=" + status;
+    }
+
+}
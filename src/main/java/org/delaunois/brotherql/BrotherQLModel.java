@@ -21,122 +21,122 @@ public enum BrotherQLModel {
     /**
      * Brother QL-500
      */
-    QL_500("QL-500", 0x2015, 0x4F, true, 295, 11811, true, false, false),
+    QL_500("QL-500", 0x2015, 0x4F, true, 295, 11811, true, false, false, false, 50),
 
     /**
      * Brother QL-550
      */
-    QL_550("QL-550", 0x2016, 0x4F, false, 295, 11811, true, false, false),
+    QL_550("QL-550", 0x2016, 0x4F, false, 295, 11811, true, false, false, false, 90),
 
     /**
      * Brother QL-560
      */
-    QL_560("QL-560", 0x2027, 0x31, false, 295, 11811, true, false, false),
+    QL_560("QL-560", 0x2027, 0x31, false, 295, 11811, true, false, false, false, 90),
 
     /**
      * Brother QL-570
      */
-    QL_570("QL-570", 0x2028, 0x32, false, 150, 11811, true, true, false),
+    QL_570("QL-570", 0x2028, 0x32, false, 150, 11811, true, true, false, false, 90),
 
     /**
      * Brother QL-580N
      */
-    QL_580N("QL-580N", 0x2029, 0x33, false, 150, 11811, false, true, false),
+    QL_580N("QL-580N", 0x2029, 0x33, false, 150, 11811, false, true, false, true, 90),
 
     /**
      * Brother QL-600
      */
-    QL_600("QL-600", 0x20C0, 0x47, true, 150, 11811, false, true, false),
+    QL_600("QL-600", 0x20C0, 0x47, true, 150, 11811, false, true, false, false, 150),
 
     /**
      * Brother QL-650TD
      */
-    QL_650TD("QL-650TD", 0x201B, 0x51, true, 295, 11811, false, false, false),
+    QL_650TD("QL-650TD", 0x201B, 0x51, true, 295, 11811, false, false, false, true, 90),
 
     /**
      * Brother QL-700
      */
-    QL_700_P("QL-700", 0x2042, 0x35, false, 150, 11811, true, true, false),
+    QL_700_P("QL-700", 0x2042, 0x35, false, 150, 11811, true, true, false, false, 150),
 
     /**
      * Brother QL-700M
      */
-    QL_700_M("QL-700M", 0x2049, 0x35, false, 150, 11811, true, true, false),
+    QL_700_M("QL-700M", 0x2049, 0x35, false, 150, 11811, true, true, false, false, 150),
 
     /**
      * Brother QL-710W
      */
-    QL_710_W("QL-710W", 0x2043, 0x36, false, 150, 11811, true, true, false),
+    QL_710_W("QL-710W", 0x2043, 0x36, false, 150, 11811, true, true, false, true, 150),
 
     /**
      * Brother QL-720NW
      */
-    QL_720_NW("QL-720NW", 0x2044, 0x37, false, 150, 11811, true, true, false),
+    QL_720_NW("QL-720NW", 0x2044, 0x37, false, 150, 11811, true, true, false, true, 150),
 
     /**
      * Brother QL-800
      */
-    QL_800("QL-800", 0x209b, 0x38, false, 150, 11811, false, true, true),
+    QL_800("QL-800", 0x209b, 0x38, false, 150, 11811, false, true, true, false, 148),
 
     /**
      * Brother QL-810W
      */
-    QL_810W("QL-810W", 0x209c, 0x39, false, 150, 11811, false, true, true),
+    QL_810W("QL-810W", 0x209c, 0x39, false, 150, 11811, false, true, true, true, 176),
 
     /**
      * Brother QL-820NWB
      */
-    QL_820NWB("QL-820NWB", 0x209d, 0x41, false, 150, 11811, false, true, true),
+    QL_820NWB("QL-820NWB", 0x209d, 0x41, false, 150, 11811, false, true, true, true, 176),
 
     /**
      * Brother QL-1050
      */
-    QL_1050("QL-1050", 0x2020, 0x50, true, 295, 35433, false, false, false),
+    QL_1050("QL-1050", 0x2020, 0x50, true, 295, 35433, false, false, false, true, 110),
 
     /**
      * Brother QL-1060N
      */
-    QL_1060N("QL-1060N", 0x202A, 0x34, true, 295, 35433, false, false, false),
+    QL_1060N("QL-1060N", 0x202A, 0x34, true, 295, 35433, false, false, false, true, 110),
 
     /**
      * Brother QL-1100
      */
-    QL_1100("QL-1100", 0x20a7, 0x43, false, 150, 35433, false, false, false),
+    QL_1100("QL-1100", 0x20a7, 0x43, false, 150, 35433, false, false, false, true, 110),
 
     /**
      * Brother QL-1110NWB
      */
-    QL_1110NWB("QL-1110NWB", 0x20a8, 0x44, false, 150, 35433, false, false, false),
+    QL_1110NWB("QL-1110NWB", 0x20a8, 0x44, false, 150, 35433, false, false, false, true, 110),
 
     /**
      * Brother QL-1115NWB
      */
-    QL_1115NWB("QL-1115NWB", 0x20ab, 0x45, false, 150, 35433, false, false, false),
+    QL_1115NWB("QL-1115NWB", 0x20ab, 0x45, false, 150, 35433, false, false, false, true, 110),
 
     /**
      * Brother PT-P900
      */
-    PT_P900("PT-P900", 0x2083, 0x71, false, 57, 28346, false, true, false),
+    PT_P900("PT-P900", 0x2083, 0x71, false, 57, 28346, false, true, false, true, 60),
 
     /**
      * Brother PT-P900W
      */
-    PT_P900W("PT-P900W", 0x2085, 0x69, false, 57, 28346, false, true, false),
+    PT_P900W("PT-P900W", 0x2085, 0x69, false, 57, 28346, false, true, false, true, 60),
 
     /**
      * Brother PT-P950NW
      */
-    PT_P950NW("PT-P950NW", 0x2086, 0x70, false, 57, 28346, false, true, false),
+    PT_P950NW("PT-P950NW", 0x2086, 0x70, false, 57, 28346, false, true, false, true, 60),
 
     /**
      * Brother PT-P910BT
      */
-    PT_P910BT("PT-P910BT", 0x20c7, 0x78, false, 57, 14173, true, false, false),
+    PT_P910BT("PT-P910BT", 0x20c7, 0x78, false, 57, 14173, true, false, false, true, 60),
 
     /**
      * Unknown printer
      */
-    UNKNOWN(Rx.msg("model.unknown"), 0, 0, false, 0, 0, true, false, false);
+    UNKNOWN(Rx.msg("model.unknown"), 0, 0, false, 0, 0, true, false, false, false, 50);
 
     private static final Map<Integer, BrotherQLModel> USB_PRODUCT_ID_MAP = new HashMap<>();
     private static final Map<Integer, BrotherQLModel> MODEL_CODE_MAP = new HashMap<>();
@@ -195,9 +195,19 @@ public enum BrotherQLModel {
      */
     public final boolean twoColor;
 
+    /**
+     * Whether the printer supports compressed (TIFF PackBits) raster data.
+     */
+    public final boolean compression;
+
+    /**
+     * The maximum print speed in millimeters per second, in monochrome.
+     */
+    public final int printSpeed;
+
     BrotherQLModel(String name, Integer usbProductId, int modelCode, boolean allowsFeedMargin,
                    int clMinLengthPx, int clMaxLengthPx,
-                   boolean rasterOnly, boolean dpi600, boolean twoColor) {
+                   boolean rasterOnly, boolean dpi600, boolean twoColor, boolean compression, int printSpeed) {
         this.name = name;
         this.usbProductId = usbProductId;
         this.modelCode = modelCode;
@@ -207,6 +217,8 @@ public enum BrotherQLModel {
         this.rasterOnly = rasterOnly;
         this.dpi600 = dpi600;
         this.twoColor = twoColor;
+        this.compression = compression;
+        this.printSpeed = printSpeed;
     }
 
     /**
@@ -0,0 +1,415 @@
+/*
+ * Copyright (C) 2024 Cédric de Launois
+ * See LICENSE for licensing information.
+ *
+ * Java USB Driver for printing with Brother QL printers.
+ */
+package org.delaunois.brotherql;
+
+import org.delaunois.brotherql.util.Rx;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+
+/**
+ * A pool of printers loaded with the same media, sharing the jobs between them.
+ * <p>
+ * Each job is routed to the printer with the shortest estimated remaining print time, computed from
+ * the number of pages still to print and the measured time per page of the printer. Only the printers whose
+ * loaded media matches the media of the job are considered. The loaded media is learnt from the printer status
+ * after each page, or can be declared with {@link #setMedia(String, BrotherQLMedia)}.
+ * <p>
+ * A printer whose status reports an error, or that fails to print a job while not ready, is excluded from the pool
+ * until {@link #reinstate(String)} is called. Its queued jobs, and the failed job if no page of it was printed,
+ * are moved to the other printers.
+ * <p>
+ * The jobs are sent through a {@link BrotherQLSpooler}. The pool is thread-safe.
+ *
+ * @author Cedric de Launois
+ */
+public class BrotherQLPrinterPool implements Closeable {
+
+    private static final Logger LOGGER = System.getLogger(BrotherQLPrinterPool.class.getName());
+
+    /**
+     * The time per page assumed until a page is printed, in milliseconds.
+     */
+    private static final double DEFAULT_PAGE_TIME_MS = 1000;
+
+    /**
+     * The weight of the last page time in the average time per page.
+     */
+    private static final double PAGE_TIME_SMOOTHING = 0.2;
+
+    private final BrotherQLSpooler spooler;
+    private final boolean ownsSpooler;
+    private final Map<String, Member> members = new LinkedHashMap<>();
+
+    /**
+     * Construct a pool of the given printers, with its own spooler.
+     *
+     * @param printers the printer identifiers, see {@link BrotherQLConnection#BrotherQLConnection(String)}
+     */
+    public BrotherQLPrinterPool(Collection<String> printers) {
+        this(new BrotherQLSpooler(), printers, true);
+    }
+
+    /**
+     * Construct a pool of the given printers, sending the jobs through the given spooler.
+     * The spooler is not closed with the pool.
+     *
+     * @param spooler  the spooler
+     * @param printers the printer identifiers, see {@link BrotherQLConnection#BrotherQLConnection(String)}
+     */
+    public BrotherQLPrinterPool(BrotherQLSpooler spooler, Collection<String> printers) {
+        this(spooler, printers, false);
+    }
+
+    private BrotherQLPrinterPool(BrotherQLSpooler spooler, Collection<String> printers, boolean ownsSpooler) {
+        this.spooler = spooler;
+        this.ownsSpooler = ownsSpooler;
+        for (String printer : printers) {
+            members.put(printer, new Member(printer));
+        }
+    }
+
+    /**
+     * Declare the media loaded in the given printer.
+     *
+     * @param printer the printer identifier
+     * @param media   the loaded media, or null if unknown
+     */
+    public synchronized void setMedia(String printer, BrotherQLMedia media) {
+        getMember(printer).media = media;
+    }
+
+    /**
+     * Get the identifiers of the printers currently used by the pool, i.e. not excluded after an error.
+     *
+     * @return the available printers
+     */
+    public synchronized List<String> getAvailablePrinters() {
+        List<String> available = new ArrayList<>();
+        for (Member member : members.values()) {
+            if (member.available) {
+                available.add(member.id);
+            }
+        }
+        return available;
+    }
+
+    /**
+     * Put back in the pool a printer excluded after an error, e.g. once the error is fixed.
+     *
+     * @param printer the printer identifier
+     */
+    public synchronized void reinstate(String printer) {
+        Member member = getMember(printer);
+        member.available = true;
+        member.media = null;
+    }
+
+    /**
+     * Send a job to the least loaded printer of the pool whose media matches the job media.
+     * A job without media can be printed by any printer.
+     *
+     * @param job the job to print
+     * @return a future completed with the job result once printed, or completed exceptionally if the job
+     * could not be printed
+     * @throws BrotherQLException if no printer of the pool can accept the job
+     */
+    public CompletableFuture<BrotherQLJobResult> submit(BrotherQLJob job) throws BrotherQLException {
+        return submit(job, null);
+    }
+
+    /**
+     * Send a job to the least loaded printer of the pool whose media matches the job media.
+     * A job without media can be printed by any printer.
+     *
+     * @param job            the job to print
+     * @param statusListener a lambda called after each print (or null),
+     *                       see {@link BrotherQLConnection#sendJob(BrotherQLJob, BiFunction)}
+     * @return a future completed with the job result once printed, or completed exceptionally if the job
+     * could not be printed
+     * @throws BrotherQLException if no printer of the pool can accept the job
+     */
+    public CompletableFuture<BrotherQLJobResult> submit(BrotherQLJob job,
+                                                        BiFunction<Integer, BrotherQLStatus, Boolean> statusListener)
+            throws BrotherQLException {
+        CompletableFuture<BrotherQLJobResult> result = new CompletableFuture<>();
+        route(job, statusListener, result);
+        return result;
+    }
+
+    /**
+     * Split a job into contiguous page ranges, and print them in parallel on several printers of the pool.
+     * See {@link #submitSharded(BrotherQLJob, int, BiFunction)}.
+     *
+     * @param job    the job to print
+     * @param shards the maximum number of page ranges
+     * @return the sharded job, giving the progress and result of each page range, and the combined result
+     * @throws BrotherQLException if no printer of the pool can accept the job
+     */
+    public BrotherQLShardedJob submitSharded(BrotherQLJob job, int shards) throws BrotherQLException {
+        return submitSharded(job, shards, null);
+    }
+
+    /**
+     * Split a job into contiguous page ranges, and print them in parallel on several printers of the pool.
+     * <p>
+     * The job is split in at most as many ranges as there are available printers whose media matches the job
+     * media. Each range is printed as a job with the same options. Range sizes are multiples of the job
+     * <code>cutEach</code> option, so that the labels are cut in the same groups as with a single printer.
+     * The ranges are routed as regular jobs, so that two ranges may go to the same printer if the other
+     * printers are busy.
+     *
+     * @param job            the job to print
+     * @param shards         the maximum number of page ranges
+     * @param statusListener a lambda called after each print (or null),
+     *                       see {@link BrotherQLConnection#sendJob(BrotherQLJob, BiFunction)}.
+     *                       The page number is the index of the page in the whole job. It may be called by
+     *                       several threads at once.
+     * @return the sharded job, giving the progress and result of each page range, and the combined result
+     * @throws BrotherQLException if no printer of the pool can accept the job
+     */
+    public BrotherQLShardedJob submitSharded(BrotherQLJob job, int shards,
+                                             BiFunction<Integer, BrotherQLStatus, Boolean> statusListener)
+            throws BrotherQLException {
+        List<BufferedImage> images = job.getImages();
+        if (images == null || images.isEmpty()) {
+            throw new BrotherQLException(Rx.msg("error.incompletejob"));
+        }
+
+        // Split on cut groups
+        int group = Math.max(1, job.getCutEach());
+        int groups = (images.size() + group - 1) / group;
+        int printers = candidates(job).size();
+        if (printers == 0) {
+            throw new BrotherQLException(Rx.msg("error.noprinter"));
+        }
+        int count = Math.max(1, Math.min(Math.min(shards, groups), printers));
+
+        List<BrotherQLShardedJob.Shard> shardList = new ArrayList<>();
+        int first = 0;
+        for (int i = 0; i < count; i++) {
+            // Spread the remaining groups evenly on the remaining shards
+            int shardGroups = (groups - first / group + (count - i) - 1) / (count - i);
+            int pages = Math.min(shardGroups * group, images.size() - first);
+            shardList.add(new BrotherQLShardedJob.Shard(first, pages));
+            first += pages;
+        }
+
+        BrotherQLShardedJob sharded = new BrotherQLShardedJob(shardList);
+        for (BrotherQLShardedJob.Shard shard : shardList) {
+            int firstPage = shard.getFirstPage();
+            BrotherQLJob shardJob = job.copy(images.subList(firstPage, firstPage + shard.getPageCount()));
+            BiFunction<Integer, BrotherQLStatus, Boolean> shardListener = (page, status) -> {
+                shard.pagePrinted();
+                return statusListener == null || statusListener.apply(firstPage + page, status);
+            };
+            try {
+                route(shardJob, shardListener, shard.getResult());
+            } catch (BrotherQLException e) {
+                shard.getResult().completeExceptionally(e);
+            }
+        }
+        return sharded;
+    }
+
+    /**
+     * Close the pool, and its spooler if the pool owns it.
+     */
+    @Override
+    public void close() {
+        if (ownsSpooler) {
+            spooler.close();
+        }
+    }
+
+    private void route(BrotherQLJob job, BiFunction<Integer, BrotherQLStatus, Boolean> statusListener,
+                       CompletableFuture<BrotherQLJobResult> result) throws BrotherQLException {
+        int pages = job.getImages() == null ? 0 : job.getImages().size();
+        for (Member member : candidates(job)) {
+            synchronized (this) {
+                member.pendingPages += pages;
+            }
+            JobTracker tracker = new JobTracker(member, job, pages, statusListener, result);
+            try {
+                BrotherQLSpoolJob spoolJob = spooler.submit(member.id, job, tracker::onPagePrinted);
+                spoolJob.getResult().whenComplete((r, e) -> tracker.onCompleted(spoolJob, r, e));
+                return;
+            } catch (BrotherQLException e) {
+                // Queue full : try the next printer
+                synchronized (this) {
+                    member.pendingPages -= pages;
+                }
+            }
+        }
+        throw new BrotherQLException(Rx.msg("error.noprinter"));
+    }
+
+    private synchronized List<Member> candidates(BrotherQLJob job) {
+        List<Member> candidates = new ArrayList<>();
+        for (Member member : members.values()) {
+            if (member.available && matches(member.media, job.getMedia())) {
+                candidates.add(member);
+            }
+        }
+        candidates.sort(Comparator.comparingDouble(Member::remainingTimeMs)
+                .thenComparingInt(member -> spooler.getQueueSize(member.id)));
+        return candidates;
+    }
+
+    private static boolean matches(BrotherQLMedia loaded, BrotherQLMedia wanted) {
+        if (loaded == null || wanted == null) {
+            return true;
+        }
+        // Compare the physical media, as a status does not tell e.g. the two-color variants apart
+        return loaded.mediaType == wanted.mediaType
+                && loaded.labelWidthMm == wanted.labelWidthMm
+                && loaded.labelLengthMm == wanted.labelLengthMm;
+    }
+
+    private void exclude(Member member) {
+        List<BrotherQLSpoolJob> queued;
+        synchronized (this) {
+            if (!member.available) {
+                return;
+            }
+            LOGGER.log(Level.WARNING, "Printer " + member.id + " is excluded from the pool");
+            member.available = false;
+            queued = spooler.getQueuedJobs(member.id);
+        }
+
+        // The cancelled jobs are routed to other printers
+        for (BrotherQLSpoolJob job : queued) {
+            job.cancel();
+        }
+    }
+
+    private Member getMember(String printer) {
+        Member member = members.get(printer);
+        if (member == null) {
+            throw new IllegalArgumentException("Printer " + printer + " is not part of the pool");
+        }
+        return member;
+    }
+
+    /**
+     * A printer of the pool, with its load.
+     */
+    private static final class Member {
+        private final String id;
+        private volatile BrotherQLMedia media;
+        private boolean available = true;
+        private int pendingPages;
+        private double pageTimeMs = DEFAULT_PAGE_TIME_MS;
+        private long lastPageNanos;
+
+        Member(String id) {
+            this.id = id;
+        }
+
+        double remainingTimeMs() {
+            return pendingPages * pageTimeMs;
+        }
+    }
+
+    /**
+     * Follows a job sent to a printer, updating the printer load and state.
+     */
+    private final class JobTracker {
+        private final Member member;
+        private final BrotherQLJob job;
+        private final int pages;
+        private final BiFunction<Integer, BrotherQLStatus, Boolean> statusListener;
+        private final CompletableFuture<BrotherQLJobResult> result;
+        private int printed;
+
+        JobTracker(Member member, BrotherQLJob job, int pages,
+                   BiFunction<Integer, BrotherQLStatus, Boolean> statusListener,
+                   CompletableFuture<BrotherQLJobResult> result) {
+            this.member = member;
+            this.job = job;
+            this.pages = pages;
+            this.statusListener = statusListener;
+            this.result = result;
+        }
+
+        boolean onPagePrinted(Integer page, BrotherQLStatus status) {
+            long now = System.nanoTime();
+            synchronized (BrotherQLPrinterPool.this) {
+                if (printed > 0) {
+                    double pageTimeMs = (now - member.lastPageNanos) / 1e6;
+                    member.pageTimeMs += PAGE_TIME_SMOOTHING * (pageTimeMs - member.pageTimeMs);
+                }
+                member.lastPageNanos = now;
+                member.pendingPages--;
+                printed++;
+                if (status != null) {
+                    BrotherQLMedia media = BrotherQLMedia.identify(status);
+                    if (media != null) {
+                        member.media = media;
+                    }
+                }
+            }
+
+            if (status != null && status.getStatusType() == BrotherQLStatusType.ERROR_OCCURRED) {
+                exclude(member);
+                return false;
+            }
+            return statusListener == null || statusListener.apply(page, status);
+        }
+
+        void onCompleted(BrotherQLSpoolJob spoolJob, BrotherQLJobResult jobResult, Throwable error) {
+            int done;
+            synchronized (BrotherQLPrinterPool.this) {
+                member.pendingPages -= pages - printed;
+                done = printed;
+            }
+
+            if (error == null) {
+                result.complete(jobResult);
+                return;
+            }
+
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            boolean cancelled = cause instanceof CancellationException;
+            BrotherQLStatus status = spoolJob.getLastStatus();
+            if (!cancelled && status != null && status.getStatusType() == BrotherQLStatusType.READY) {
+                // The printer is fine : the job itself cannot be printed
+                result.completeExceptionally(cause);
+                return;
+            }
+            if (!cancelled) {
+                exclude(member);
+            }
+            if (done > 0 || result.isDone()) {
+                // Do not print the pages twice
+                result.completeExceptionally(cause);
+                return;
+            }
+
+            // Not printed at all : try another printer
+            try {
+                route(job, statusListener, result);
+            } catch (BrotherQLException e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2024 Cédric de Launois
+ * See LICENSE for licensing information.
+ *
+ * Java USB Driver for printing with Brother QL printers.
+ */
+package org.delaunois.brotherql;
+
+import lombok.Getter;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A job split into contiguous page ranges (shards) printed in parallel by several printers,
+ * see {@link BrotherQLPrinterPool#submitSharded(BrotherQLJob, int)}.
+ *
+ * @author Cedric de Launois
+ */
+public class BrotherQLShardedJob {
+
+    /**
+     * A contiguous range of pages of the job, printed by a single printer.
+     */
+    public static class Shard {
+
+        /**
+         * The index of the first page of the shard in the job.
+         */
+        @Getter
+        private final int firstPage;
+
+        /**
+         * The number of pages of the shard.
+         */
+        @Getter
+        private final int pageCount;
+
+        /**
+         * A future completed with the result of the shard once printed.
+         */
+        @Getter
+        private final CompletableFuture<BrotherQLJobResult> result = new CompletableFuture<>();
+
+        private final AtomicInteger pagesPrinted = new AtomicInteger();
+
+        Shard(int firstPage, int pageCount) {
+            this.firstPage = firstPage;
+            this.pageCount = pageCount;
+        }
+
+        /**
+         * Get the number of pages of the shard printed so far.
+         *
+         * @return the number of printed pages
+         */
+        public int getPagesPrinted() {
+            return pagesPrinted.get();
+        }
+
+        void pagePrinted() {
+            pagesPrinted.incrementAndGet();
+        }
+    }
+
+    /**
+     * The shards, in page order.
+     */
+    @Getter
+    private final List<Shard> shards;
+
+    /**
+     * A future completed with the combined result of the shards once all are printed, or completed
+     * exceptionally if a shard could not be printed.
+     */
+    @Getter
+    private final CompletableFuture<BrotherQLJobResult> result;
+
+    BrotherQLShardedJob(List<Shard> shards) {
+        this.shards = List.copyOf(shards);
+        CompletableFuture<?>[] results = shards.stream().map(Shard::getResult).toArray(CompletableFuture[]::new);
+        this.result = CompletableFuture.allOf(results).thenApply(v -> combine());
+    }
+
+    /**
+     * Get the number of pages printed so far, all shards included.
+     *
+     * @return the number of printed pages
+     */
+    public int getPagesPrinted() {
+        int printed = 0;
+        for (Shard shard : shards) {
+            printed += shard.getPagesPrinted();
+        }
+        return printed;
+    }
+
+    private BrotherQLJobResult combine() {
+        int pageCount = 0;
+        int pagesPrinted = 0;
+        BrotherQLStatus status = null;
+        for (Shard shard : shards) {
+            BrotherQLJobResult shardResult = shard.getResult().join();
+            pageCount += shard.getPageCount();
+            pagesPrinted += shardResult.getPagesPrinted();
+            status = shardResult.getStatus();
+        }
+        return new BrotherQLJobResult(pageCount, pagesPrinted, status);
+    }
+
+}
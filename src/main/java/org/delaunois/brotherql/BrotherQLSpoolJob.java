@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2024 Cédric de Launois
+ * See LICENSE for licensing information.
+ *
+ * Java USB Driver for printing with Brother QL printers.
+ */
+package org.delaunois.brotherql;
+
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+
+/**
+ * A job queued in a {@link BrotherQLSpooler}.
+ *
+ * @author Cedric de Launois
+ */
+public class BrotherQLSpoolJob {
+
+    /**
+     * The state of a spooled job.
+     */
+    public enum State {
+        /**
+         * The job waits in the printer queue.
+         */
+        QUEUED,
+        /**
+         * The job is being sent to the printer.
+         */
+        PRINTING,
+        /**
+         * The job was sent to the printer, completely or not (see {@link BrotherQLJobResult#isComplete()}).
+         */
+        DONE,
+        /**
+         * The job could not be printed.
+         */
+        FAILED,
+        /**
+         * The job was cancelled before being printed, or while being printed.
+         */
+        CANCELLED
+    }
+
+    /**
+     * The identifier of the printer the job is sent to.
+     */
+    @Getter
+    private final String printer;
+
+    /**
+     * The print job.
+     */
+    @Getter
+    private final BrotherQLJob job;
+
+    /**
+     * A future completed with the job result once the job is printed, or completed exceptionally if the job
+     * could not be printed or was cancelled. Cancelling the future cancels the job, as {@link #cancel()}.
+     */
+    @Getter
+    private final CompletableFuture<BrotherQLJobResult> result = new CompletableFuture<>();
+
+    /**
+     * The last status read from the printer when the job ended, or null if none could be read.
+     * Tells e.g. whether a failure is due to the printer state or to the job itself.
+     */
+    @Getter
+    private volatile BrotherQLStatus lastStatus;
+
+    private final BiFunction<Integer, BrotherQLStatus, Boolean> statusListener;
+    private final Collection<BrotherQLSpoolJob> queue;
+    private final AtomicReference<State> state = new AtomicReference<>(State.QUEUED);
+
+    BrotherQLSpoolJob(String printer, BrotherQLJob job, BiFunction<Integer, BrotherQLStatus, Boolean> statusListener,
+                      Collection<BrotherQLSpoolJob> queue) {
+        this.printer = printer;
+        this.job = job;
+        this.statusListener = statusListener;
+        this.queue = queue;
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                cancel();
+            }
+        });
+    }
+
+    /**
+     * Get the current state of the job.
+     *
+     * @return the state
+     */
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * Cancel the job. A queued job is not printed. A job being printed stops after the current page.
+     *
+     * @return true if the job was cancelled, false if it was already done, failed or cancelled
+     */
+    public boolean cancel() {
+        while (true) {
+            State current = state.get();
+            if (current != State.QUEUED && current != State.PRINTING) {
+                return false;
+            }
+            if (state.compareAndSet(current, State.CANCELLED)) {
+                if (current == State.QUEUED) {
+                    // Free the queue slot
+                    queue.remove(this);
+                    result.cancel(false);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Mark the job as being printed, unless it was cancelled.
+     *
+     * @return true if the job must be printed
+     */
+    boolean start() {
+        return state.compareAndSet(State.QUEUED, State.PRINTING);
+    }
+
+    /**
+     * The listener given to the connection : forwards the page status and stops the print once cancelled.
+     */
+    boolean onPagePrinted(Integer page, BrotherQLStatus status) {
+        boolean resume = statusListener == null || statusListener.apply(page, status);
+        return resume && state.get() != State.CANCELLED;
+    }
+
+    void setLastStatus(BrotherQLStatus lastStatus) {
+        this.lastStatus = lastStatus;
+    }
+
+    void complete(BrotherQLJobResult jobResult) {
+        if (state.compareAndSet(State.PRINTING, State.DONE)) {
+            result.complete(jobResult);
+        } else {
+            // Cancelled while printing
+            result.cancel(false);
+        }
+    }
+
+    void fail(Throwable cause) {
+        state.compareAndSet(State.PRINTING, State.FAILED);
+        state.compareAndSet(State.QUEUED, State.FAILED);
+        result.completeExceptionally(cause);
+    }
+
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2024 Cédric de Launois
+ * See LICENSE for licensing information.
+ *
+ * Java USB Driver for printing with Brother QL printers.
+ */
+package org.delaunois.brotherql;
+
+import org.delaunois.brotherql.util.Rx;
+
+import java.io.Closeable;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A print spooler, sending the jobs of many threads to one or more printers.
+ * <p>
+ * The spooler owns one connection per printer identifier (see {@link BrotherQLConnection#BrotherQLConnection(String)}),
+ * opened when the first job is sent. Each printer has a bounded queue of jobs, sent to the printer one after
+ * another by a session task. By default, each printer has a dedicated thread running its session; with an
+ * executor, the session task is started when a job is queued and ends when the queue of the printer is empty,
+ * so that many printers can share a few threads (see {@link BrotherQLFleet}).
+ * When the queue of a printer is full, a job is rejected, or the caller waits for a free slot during
+ * a limited time.
+ * <p>
+ * The spooler is thread-safe.
+ *
+ * @author Cedric de Launois
+ */
+public class BrotherQLSpooler implements Closeable {
+
+    private static final Logger LOGGER = System.getLogger(BrotherQLSpooler.class.getName());
+
+    /**
+     * The default maximum number of jobs waiting in the queue of a printer.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    private final int queueCapacity;
+    private final Function<String, BrotherQLConnection> connectionFactory;
+    private final Executor executor;
+    private final Map<String, Printer> printers = new LinkedHashMap<>();
+    private volatile boolean closed = false;
+
+    /**
+     * Construct a spooler with the default queue capacity.
+     */
+    public BrotherQLSpooler() {
+        this(DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Construct a spooler with the given queue capacity.
+     *
+     * @param queueCapacity the maximum number of jobs waiting in the queue of each printer
+     */
+    public BrotherQLSpooler(int queueCapacity) {
+        this(queueCapacity, BrotherQLConnection::new);
+    }
+
+    /**
+     * Construct a spooler with the given queue capacity, creating the printer connections with the given factory.
+     *
+     * @param queueCapacity     the maximum number of jobs waiting in the queue of each printer
+     * @param connectionFactory the factory creating a connection from a printer identifier.
+     *                          The spooler opens and closes the connections.
+     */
+    public BrotherQLSpooler(int queueCapacity, Function<String, BrotherQLConnection> connectionFactory) {
+        this(queueCapacity, connectionFactory, null);
+    }
+
+    /**
+     * Construct a spooler running the printer sessions with the given executor.
+     *
+     * @param queueCapacity     the maximum number of jobs waiting in the queue of each printer
+     * @param connectionFactory the factory creating a connection from a printer identifier.
+     *                          The spooler opens and closes the connections.
+     * @param executor          the executor running the printer sessions, or null for a dedicated thread
+     *                          per printer. The executor is not shut down when the spooler is closed.
+     */
+    public BrotherQLSpooler(int queueCapacity, Function<String, BrotherQLConnection> connectionFactory,
+                            Executor executor) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+        this.queueCapacity = queueCapacity;
+        this.connectionFactory = connectionFactory;
+        this.executor = executor;
+    }
+
+    /**
+     * Queue a job for the given printer.
+     *
+     * @param printer the printer identifier, e.g. <code>usb://Brother/QL-700</code>
+     * @param job     the job to print
+     * @return the spooled job
+     * @throws BrotherQLException if the queue of the printer is full, or if the spooler is closed
+     */
+    public BrotherQLSpoolJob submit(String printer, BrotherQLJob job) throws BrotherQLException {
+        return submit(printer, job, null);
+    }
+
+    /**
+     * Queue a job for the given printer.
+     *
+     * @param printer        the printer identifier, e.g. <code>usb://Brother/QL-700</code>
+     * @param job            the job to print
+     * @param statusListener a lambda called after each print (or null),
+     *                       see {@link BrotherQLConnection#sendJob(BrotherQLJob, BiFunction)}
+     * @return the spooled job
+     * @throws BrotherQLException if the queue of the printer is full, or if the spooler is closed
+     */
+    public BrotherQLSpoolJob submit(String printer, BrotherQLJob job,
+                                    BiFunction<Integer, BrotherQLStatus, Boolean> statusListener)
+            throws BrotherQLException {
+        Printer p = getPrinter(printer);
+        BrotherQLSpoolJob spoolJob = new BrotherQLSpoolJob(printer, job, statusListener, p.queue);
+        if (!p.queue.offer(spoolJob)) {
+            throw new BrotherQLException(String.format(Rx.msg("error.queuefull"), printer));
+        }
+        checkNotClosed(spoolJob);
+        p.start();
+        return spoolJob;
+    }
+
+    /**
+     * Queue a job for the given printer, waiting if necessary for a free slot in the queue.
+     *
+     * @param printer        the printer identifier, e.g. <code>usb://Brother/QL-700</code>
+     * @param job            the job to print
+     * @param statusListener a lambda called after each print (or null),
+     *                       see {@link BrotherQLConnection#sendJob(BrotherQLJob, BiFunction)}
+     * @param timeout        how long to wait for a free slot
+     * @param unit           the unit of the timeout
+     * @return the spooled job
+     * @throws BrotherQLException   if the queue of the printer is still full after the timeout,
+     *                              or if the spooler is closed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public BrotherQLSpoolJob submit(String printer, BrotherQLJob job,
+                                    BiFunction<Integer, BrotherQLStatus, Boolean> statusListener,
+                                    long timeout, TimeUnit unit) throws BrotherQLException, InterruptedException {
+        Printer p = getPrinter(printer);
+        BrotherQLSpoolJob spoolJob = new BrotherQLSpoolJob(printer, job, statusListener, p.queue);
+        if (!p.queue.offer(spoolJob, timeout, unit)) {
+            throw new BrotherQLException(String.format(Rx.msg("error.queuefull"), printer));
+        }
+        checkNotClosed(spoolJob);
+        p.start();
+        return spoolJob;
+    }
+
+    /**
+     * Get the identifiers of the printers which received a job so far.
+     *
+     * @return the printer identifiers
+     */
+    public synchronized List<String> getPrinters() {
+        return new ArrayList<>(printers.keySet());
+    }
+
+    /**
+     * Get the number of jobs waiting in the queue of the given printer, the job being printed excluded.
+     *
+     * @param printer the printer identifier
+     * @return the number of queued jobs
+     */
+    public int getQueueSize(String printer) {
+        Printer p = findPrinter(printer);
+        return p == null ? 0 : p.queue.size();
+    }
+
+    /**
+     * Get the jobs waiting in the queue of the given printer, in order.
+     *
+     * @param printer the printer identifier
+     * @return the queued jobs
+     */
+    public List<BrotherQLSpoolJob> getQueuedJobs(String printer) {
+        Printer p = findPrinter(printer);
+        return p == null ? new ArrayList<>() : new ArrayList<>(p.queue);
+    }
+
+    /**
+     * Get the job being printed by the given printer.
+     *
+     * @param printer the printer identifier
+     * @return the job being printed, or null if none
+     */
+    public BrotherQLSpoolJob getCurrentJob(String printer) {
+        Printer p = findPrinter(printer);
+        return p == null ? null : p.current;
+    }
+
+    /**
+     * Close the spooler. The queued jobs are cancelled, the jobs being printed stop after the current page,
+     * and the printer connections are closed.
+     */
+    @Override
+    public void close() {
+        List<Printer> stopped;
+        synchronized (this) {
+            closed = true;
+            stopped = new ArrayList<>(printers.values());
+            printers.clear();
+        }
+
+        for (Printer p : stopped) {
+            BrotherQLSpoolJob job;
+            while ((job = p.queue.poll()) != null) {
+                job.cancel();
+            }
+            BrotherQLSpoolJob current = p.current;
+            if (current != null) {
+                current.cancel();
+            }
+            p.interrupt();
+        }
+
+        for (Printer p : stopped) {
+            try {
+                p.awaitStopped();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            p.closeConnection();
+        }
+    }
+
+    /**
+     * Cancel a job queued while the spooler was being closed : its queue may have been drained already,
+     * and its worker stopped.
+     */
+    private void checkNotClosed(BrotherQLSpoolJob spoolJob) throws BrotherQLException {
+        synchronized (this) {
+            if (!closed) {
+                return;
+            }
+        }
+        spoolJob.cancel();
+        throw new BrotherQLException(Rx.msg("error.spoolerclosed"));
+    }
+
+    private synchronized Printer findPrinter(String printer) {
+        return printers.get(printer);
+    }
+
+    private synchronized Printer getPrinter(String printer) throws BrotherQLException {
+        if (closed) {
+            throw new BrotherQLException(Rx.msg("error.spoolerclosed"));
+        }
+        return printers.computeIfAbsent(printer, Printer::new);
+    }
+
+    /**
+     * A printer with its queue and its connection.
+     * At most one session task runs at a time, so that the jobs of a printer are printed in order.
+     */
+    private final class Printer implements Runnable {
+
+        private final String id;
+        private final BlockingQueue<BrotherQLSpoolJob> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final ExecutorService dedicatedExecutor;
+        private volatile BrotherQLSpoolJob current;
+        private BrotherQLConnection connection;
+        private boolean running = false;
+        private Thread worker;
+
+        Printer(String id) {
+            this.id = id;
+            if (executor == null) {
+                this.dedicatedExecutor = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "brotherql-spooler-" + id);
+                    t.setDaemon(true);
+                    return t;
+                });
+            } else {
+                this.dedicatedExecutor = null;
+            }
+        }
+
+        /**
+         * Start the session task, unless already running.
+         */
+        private void start() {
+            synchronized (this) {
+                if (running) {
+                    return;
+                }
+                running = true;
+            }
+            try {
+                (executor == null ? dedicatedExecutor : executor).execute(this);
+            } catch (RejectedExecutionException e) {
+                // Spooler closed meanwhile
+                stopped();
+            }
+        }
+
+        private synchronized BrotherQLSpoolJob next() {
+            BrotherQLSpoolJob job = closed ? null : queue.poll();
+            if (job == null) {
+                stopped();
+            }
+            return job;
+        }
+
+        private synchronized void stopped() {
+            worker = null;
+            running = false;
+            notifyAll();
+        }
+
+        private synchronized void interrupt() {
+            if (worker != null) {
+                worker.interrupt();
+            }
+        }
+
+        private void awaitStopped() throws InterruptedException {
+            synchronized (this) {
+                while (running) {
+                    wait();
+                }
+            }
+            if (dedicatedExecutor != null) {
+                dedicatedExecutor.shutdownNow();
+            }
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                worker = Thread.currentThread();
+            }
+            BrotherQLSpoolJob job;
+            while ((job = next()) != null) {
+                if (job.start()) {
+                    current = job;
+                    print(job);
+                    current = null;
+                }
+            }
+        }
+
+        private void print(BrotherQLSpoolJob job) {
+            try {
+                if (connection == null) {
+                    connection = connectionFactory.apply(id);
+                    connection.open();
+                }
+                // Print from the session thread : the jobs of the printer are printed one after another
+                BrotherQLJobResult result = connection.printJob(job.getJob(), job::onPagePrinted);
+                job.setLastStatus(connection.getLastStatus());
+                job.complete(result);
+
+            } catch (BrotherQLException | RuntimeException e) {
+                fail(job, e);
+            }
+        }
+
+        private void fail(BrotherQLSpoolJob job, Throwable cause) {
+            LOGGER.log(Level.WARNING, "Job failed on printer " + id + ": " + cause.getMessage());
+            job.setLastStatus(connection == null ? null : connection.getLastStatus());
+            job.fail(cause);
+            // Start again from a fresh connection with the next job
+            closeConnection();
+        }
+
+        private void closeConnection() {
+            if (connection != null) {
+                connection.close();
+                connection = null;
+            }
+        }
+    }
+
+}
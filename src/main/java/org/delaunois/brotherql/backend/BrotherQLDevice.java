@@ -45,6 +45,20 @@ public interface BrotherQLDevice {
      */
     ByteBuffer readStatus(long timeout);
 
+    /**
+     * Start monitoring the printer status in the background, if the device supports it.
+     * While the monitor runs, {@link #readStatus(long)} returns the statuses received by the monitor.
+     * The monitor is stopped when the device is closed. Starting an already started monitor returns it.
+     * The default implementation does not support monitoring.
+     *
+     * @return the status monitor, or null if the device does not support it
+     * @throws IllegalStateException if the device is not open
+     * @throws BrotherQLException    if the monitor could not be started
+     */
+    default BrotherQLStatusMonitor startStatusMonitor() throws BrotherQLException {
+        return null;
+    }
+
     /**
      * Writes some data to the printer.
      *
@@ -55,6 +69,94 @@ public interface BrotherQLDevice {
      */
     void write(byte[] data, long timeout) throws BrotherQLException;
 
+    /**
+     * Writes the remaining bytes of the given buffer to the printer. The buffer position is advanced
+     * by the number of bytes written.
+     * The default implementation copies the bytes to an array and calls {@link #write(byte[], long)}.
+     *
+     * @param data    the data to send to the printer, from its position to its limit
+     * @param timeout timeout (in milliseconds) that this function should wait before giving up due to no
+     *                response being received. For an unlimited timeout, use value 0.
+     * @throws BrotherQLException if the data could not be sent
+     */
+    default void write(ByteBuffer data, long timeout) throws BrotherQLException {
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        write(bytes, timeout);
+    }
+
+    /**
+     * Writes the remaining bytes of the given buffers to the printer, in order, as a single gathering write
+     * when the device supports it. The position of each buffer is advanced by the number of bytes written.
+     * The default implementation writes the buffers one after another with {@link #write(ByteBuffer, long)}.
+     *
+     * @param data    the data to send to the printer
+     * @param timeout timeout (in milliseconds) that this function should wait before giving up due to no
+     *                response being received. For an unlimited timeout, use value 0.
+     * @throws BrotherQLException if the data could not be sent
+     */
+    default void write(ByteBuffer[] data, long timeout) throws BrotherQLException {
+        for (ByteBuffer buffer : data) {
+            write(buffer, timeout);
+        }
+    }
+
+    /**
+     * Get a buffer suited to {@link #write(ByteBuffer, long)}, e.g. a direct buffer for native transfers.
+     * The buffer should be given back with {@link #releaseBuffer(ByteBuffer)} once it is no longer used,
+     * so that it can be reused.
+     * The default implementation allocates a heap buffer.
+     *
+     * @param capacity the minimum capacity of the buffer
+     * @return a cleared buffer, whose limit is the requested capacity
+     */
+    default ByteBuffer acquireBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Give back a buffer obtained from {@link #acquireBuffer(int)}.
+     * The default implementation does nothing.
+     *
+     * @param buffer the buffer, which must no longer be used by the caller
+     */
+    default void releaseBuffer(ByteBuffer buffer) {
+        // Nothing to release
+    }
+
+    /**
+     * Get the preferred size of the writes to the printer. The raster lines of a page are gathered
+     * in chunks of this size before being written, so as to reduce the number of transfers.
+     * A value of 0 means that each command is written separately.
+     *
+     * @return the preferred write size in bytes, or 0 to write each command separately
+     */
+    default int getPreferredWriteSize() {
+        return 0;
+    }
+
+    /**
+     * Tells whether the printer was disconnected (e.g. unplugged or switched off) while open.
+     * The default implementation never detects a disconnection.
+     *
+     * @return true if the printer is no longer connected
+     */
+    default boolean isDisconnected() {
+        return false;
+    }
+
+    /**
+     * Wait for a disconnected printer to be connected again, and open it again.
+     * The default implementation does not support reconnection.
+     *
+     * @param timeout how long to wait in milliseconds
+     * @return true if the printer was opened again, false if it did not come back within the timeout
+     * @throws BrotherQLException if the printer came back but could not be opened
+     */
+    default boolean reconnect(long timeout) throws BrotherQLException {
+        return false;
+    }
+
     /**
      * Get whether the printer connection is closed or not.
      *
@@ -2,15 +2,21 @@ package org.delaunois.brotherql.backend;
 
 import lombok.Getter;
 import lombok.Setter;
+import org.delaunois.brotherql.BrotherQLException;
 import org.delaunois.brotherql.BrotherQLMedia;
 import org.delaunois.brotherql.BrotherQLModel;
 import org.delaunois.brotherql.BrotherQLPhaseType;
 import org.delaunois.brotherql.BrotherQLStatusType;
 import org.delaunois.brotherql.util.Hex;
+import org.delaunois.brotherql.util.Rx;
 
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.delaunois.brotherql.protocol.QL.CMD_PRINT;
+import static org.delaunois.brotherql.protocol.QL.CMD_PRINT_LAST;
 
 /**
  * A dummy implementation of BrotherQLDevice interface
@@ -43,6 +49,24 @@ public class BrotherQLDeviceSimulator implements BrotherQLDevice {
     @Getter
     @Setter
     private boolean usbPrinter = true;
+
+    /**
+     * The preferred write size of the simulated printer. Default is 0 : each command is written separately.
+     */
+    @Getter
+    @Setter
+    private int preferredWriteSize = 0;
+
+    /**
+     * The number of print commands after which the simulated printer is disconnected, or -1 to never
+     * disconnect. The print command itself fails, and the printer is connected again on the next reconnection.
+     */
+    @Getter
+    @Setter
+    private int disconnectAfterPrints = -1;
+
+    private int prints = 0;
+    private boolean disconnected = false;
     
     /**
      * Simulate a brother QL printer with the given id and given media.
@@ -118,16 +142,41 @@ public class BrotherQLDeviceSimulator implements BrotherQLDevice {
 
     @Override
     public ByteBuffer readStatus(long timeout) {
+        if (disconnected) {
+            return null;
+        }
         LOGGER.log(Level.INFO, "Rx: " + Hex.toString(status));
         return ByteBuffer.wrap(status);
     }
 
     @Override
-    public void write(byte[] data, long timeout) {
+    public void write(byte[] data, long timeout) throws BrotherQLException {
+        if (Arrays.equals(data, CMD_PRINT) || Arrays.equals(data, CMD_PRINT_LAST)) {
+            prints++;
+            if (prints == disconnectAfterPrints) {
+                disconnected = true;
+            }
+        }
+        if (disconnected) {
+            throw new BrotherQLException(Rx.msg("libusb.nodevice"));
+        }
         LOGGER.log(Level.INFO, "Tx: " + Hex.toString(data));
         tx += Hex.toString(data) + "\n";
     }
 
+    @Override
+    public boolean isDisconnected() {
+        return disconnected;
+    }
+
+    @Override
+    public boolean reconnect(long timeout) {
+        disconnected = false;
+        disconnectAfterPrints = -1;
+        open = true;
+        return true;
+    }
+
     @Override
     public boolean isClosed() {
         return !open;
@@ -7,28 +7,42 @@ import org.delaunois.brotherql.BrotherQLMediaType;
 import org.delaunois.brotherql.BrotherQLModel;
 import org.delaunois.brotherql.BrotherQLPhaseType;
 import org.delaunois.brotherql.BrotherQLStatusType;
+import org.delaunois.brotherql.util.Hex;
+import org.delaunois.brotherql.util.Rx;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.lang.System.Logger.Level;
 import java.net.InetSocketAddress;
-import java.net.Socket;
+import java.net.StandardSocketOptions;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Access layer to TCP/IP Brother QL device printers.
+ * <p>
+ * The data is written to a non-blocking socket channel. When the printer does not accept all the data at once,
+ * the rest is written by the selector thread shared by all the network printers, as soon as the socket accepts
+ * more data, while the caller waits for the write to complete within its timeout.
+ * A write not completed in time closes the device, since the printer would otherwise receive a truncated command.
  *
  * @author Cedric de Launois
  */
 public class BrotherQLDeviceTcp implements BrotherQLDevice{
-    
+
     private static final System.Logger LOGGER = System.getLogger(BrotherQLDeviceTcp.class.getName());
-    
+
     private static final int DEFAULT_PORT = 9100;
     private static final int DEFAULT_CONNECT_TIMEOUT = 5000;
     private static final int DEFAULT_READ_TIMEOUT = 5000;
+    private static final int DEFAULT_WRITE_TIMEOUT = 10000;
+    private static final int WRITE_CHUNK_SIZE = 16384;
 
     private static final byte[] READY = new byte[]{
             (byte)0x80, 0x20, 0x42, 0, 0, 0, 0, 0,
@@ -38,16 +52,48 @@ public class BrotherQLDeviceTcp implements BrotherQLDevice{
     };
 
     private final URI uri;
-    private Socket socket = null;
-    
+    private final Object writeLock = new Object();
+    // Held by the caller of a write until all its data is written, so that writes never interleave
+    private final ReentrantLock writer = new ReentrantLock();
+    private volatile SocketChannel channel = null;
+    private TcpSelector selector;
+    private SelectionKey key;
+    private ByteBuffer[] pendingData;
+    private CompletableFuture<Void> pendingWrite;
+
     @Getter
     @Setter
     private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
-    
+
     @Getter
     @Setter
     private int readTimeout = DEFAULT_READ_TIMEOUT;
-    
+
+    /**
+     * The minimum time in milliseconds given to the printer to accept the data of a write, or 0 to wait
+     * without limit. A longer timeout given to {@link #write(ByteBuffer[], long)} prevails.
+     * Printers stop reading the socket while their input buffer is full, e.g. while printing a long page.
+     */
+    @Getter
+    @Setter
+    private int writeTimeout = DEFAULT_WRITE_TIMEOUT;
+
+    /**
+     * Whether to disable the Nagle algorithm on the socket (<code>TCP_NODELAY</code>), so that small commands
+     * are sent without delay. Applies to the next connection.
+     */
+    @Getter
+    @Setter
+    private boolean tcpNoDelay = true;
+
+    /**
+     * The size in bytes of the socket send buffer (<code>SO_SNDBUF</code>), or 0 to keep the system default.
+     * Applies to the next connection.
+     */
+    @Getter
+    @Setter
+    private int sendBufferSize = 0;
+
     @Getter
     private BrotherQLModel model;
 
@@ -62,33 +108,54 @@ public class BrotherQLDeviceTcp implements BrotherQLDevice{
         if (uri == null) {
             throw new IllegalArgumentException("Device URI is required");
         }
-        
+
         if (!"tcp".equals(uri.getScheme())) {
             throw new IllegalArgumentException("Only tcp scheme is supported for network devices");
         }
-        
+
         if (uri.getPath() == null || uri.getPath().isEmpty()) {
             throw new IllegalArgumentException("Device model is required for network devices");
         }
-        
+
         model = BrotherQLModel.fromModelName(uri.getPath().substring(1));
     }
 
     @Override
     public void open() throws BrotherQLException {
-        if (socket != null) {
+        if (channel != null) {
             throw new IllegalStateException("Device is already open");
         }
-        
+
         int port = uri.getPort() > 0 ? uri.getPort() : DEFAULT_PORT;
+        SocketChannel ch = null;
         try {
-          socket = new Socket();
-          socket.connect(new InetSocketAddress(uri.getHost(), port), connectTimeout);
-        } catch  (IOException e) {
+            ch = SocketChannel.open();
+            ch.setOption(StandardSocketOptions.TCP_NODELAY, tcpNoDelay);
+            if (sendBufferSize > 0) {
+                ch.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+            }
+            // Connect in blocking mode to honor the connect timeout
+            ch.socket().connect(new InetSocketAddress(uri.getHost(), port), connectTimeout);
+            ch.configureBlocking(false);
+
+            selector = TcpSelector.acquire();
+            try {
+                key = selector.register(ch, this::onWritable).get();
+            } catch (ExecutionException | InterruptedException e) {
+                TcpSelector.release();
+                selector = null;
+                throw e;
+            }
+            channel = ch;
+        } catch (IOException | ExecutionException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            closeChannel(ch);
             throw new BrotherQLException(e.getMessage());
-        }        
+        }
     }
-    
+
     @Override
     public ByteBuffer readStatus(long timeout) {
         return ByteBuffer.wrap(READY);
@@ -96,42 +163,180 @@ public class BrotherQLDeviceTcp implements BrotherQLDevice{
 
     @Override
     public void write(byte[] data, long timeout) throws BrotherQLException {
-        if (socket == null) {
+        write(new ByteBuffer[]{ByteBuffer.wrap(data)}, timeout);
+    }
+
+    @Override
+    public void write(ByteBuffer data, long timeout) throws BrotherQLException {
+        write(new ByteBuffer[]{data}, timeout);
+    }
+
+    /**
+     * Writes the remaining bytes of the given buffers to the printer with a single gathering write.
+     * The write must complete within the given timeout, or within the write timeout of the device if longer,
+     * otherwise the device is closed. A write from another thread still in progress is awaited first,
+     * within the same timeout.
+     *
+     * @param data    the data to send to the printer
+     * @param timeout timeout (in milliseconds) that this function should wait before giving up due to the
+     *                printer not accepting the data. For an unlimited timeout, use value 0.
+     * @throws BrotherQLException if the data could not be sent in time
+     */
+    @Override
+    public void write(ByteBuffer[] data, long timeout) throws BrotherQLException {
+        if (channel == null) {
             throw new IllegalStateException("Device is not open");
         }
-        
+
+        long wait = timeout == 0 || writeTimeout == 0 ? 0 : Math.max(timeout, writeTimeout);
         try {
-            OutputStream out = socket.getOutputStream(); 
-            if (data.length > 0) {
-                DataOutputStream dos = new DataOutputStream(out);
-                dos.write(data, 0, data.length);
+            if (wait == 0) {
+                writer.lockInterruptibly();
+            } else if (!writer.tryLock(wait, TimeUnit.MILLISECONDS)) {
+                throw new BrotherQLException(String.format(Rx.msg("error.sendtimeout"), wait));
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BrotherQLException(Rx.msg("error.senderror"), e);
+        }
+        try {
+            writeAll(data, wait);
+        } finally {
+            writer.unlock();
+        }
+    }
+
+    private void writeAll(ByteBuffer[] data, long wait) throws BrotherQLException {
+        SocketChannel ch = channel;
+        if (ch == null) {
+            // Closed by the failure of the previous write
+            throw new BrotherQLException(Rx.msg("error.senderror"));
+        }
+
+        if (LOGGER.isLoggable(Level.DEBUG)) {
+            for (ByteBuffer buffer : data) {
+                LOGGER.log(Level.DEBUG, "Tx: " + Hex.toString(buffer.slice()));
+            }
+        }
+
+        CompletableFuture<Void> done;
+        try {
+            synchronized (writeLock) {
+                if (channel == null) {
+                    throw new IOException("Device closed");
+                }
+                ch.write(data);
+                if (!hasRemaining(data)) {
+                    return;
+                }
+                // The socket buffer is full : the selector thread writes the rest
+                pendingData = data;
+                pendingWrite = done = new CompletableFuture<>();
+                selector.setWriteInterest(key, true);
+            }
+            if (wait == 0) {
+                done.get();
+            } else {
+                done.get(wait, TimeUnit.MILLISECONDS);
+            }
+
+        } catch (TimeoutException e) {
+            close();
+            throw new BrotherQLException(String.format(Rx.msg("error.sendtimeout"), wait));
         } catch (IOException e) {
-            throw new BrotherQLException(e.getMessage());
+            close();
+            throw new BrotherQLException(Rx.msg("error.senderror"), e);
+        } catch (ExecutionException e) {
+            close();
+            throw new BrotherQLException(Rx.msg("error.senderror"), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new BrotherQLException(Rx.msg("error.senderror"), e);
         }
     }
-    
+
+    @Override
+    public int getPreferredWriteSize() {
+        return WRITE_CHUNK_SIZE;
+    }
+
     @Override
     public boolean isClosed() {
-        return socket == null;
+        return channel == null;
     }
 
     @Override
     public void close() {
-        if (socket != null) {
-            try {
-                socket.close();
-            } catch (IOException e) {
-                LOGGER.log(Level.WARNING, "Error closing socket", e);
+        SocketChannel ch;
+        synchronized (writeLock) {
+            ch = channel;
+            channel = null;
+            if (pendingWrite != null) {
+                pendingWrite.completeExceptionally(new IOException("Device closed"));
+                pendingWrite = null;
+                pendingData = null;
             }
-            socket = null;
+            if (key != null) {
+                key.cancel();
+                key = null;
+            }
+            selector = null;
+        }
+        if (ch != null) {
+            closeChannel(ch);
+            TcpSelector.release();
         }
         model = null;
     }
-    
+
     @Override
     public boolean isUsbPrinter() {
         return false;
     }
-    
+
+    /**
+     * Called by the selector thread when the socket accepts more data.
+     */
+    private void onWritable() {
+        synchronized (writeLock) {
+            if (pendingWrite != null) {
+                try {
+                    channel.write(pendingData);
+                    if (hasRemaining(pendingData)) {
+                        return;
+                    }
+                    pendingWrite.complete(null);
+                } catch (IOException e) {
+                    pendingWrite.completeExceptionally(e);
+                }
+                pendingWrite = null;
+                pendingData = null;
+            }
+            if (key != null && key.isValid()) {
+                key.interestOps(0);
+            }
+        }
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] data) {
+        for (ByteBuffer buffer : data) {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void closeChannel(SocketChannel ch) {
+        if (ch == null) {
+            return;
+        }
+        try {
+            ch.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error closing socket", e);
+        }
+    }
+
 }
@@ -17,12 +17,10 @@ import org.usb4java.Context;
 import org.usb4java.Device;
 import org.usb4java.DeviceDescriptor;
 import org.usb4java.DeviceHandle;
-import org.usb4java.DeviceList;
 import org.usb4java.EndpointDescriptor;
 import org.usb4java.Interface;
 import org.usb4java.InterfaceDescriptor;
 import org.usb4java.LibUsb;
-import org.usb4java.LibUsbException;
 
 import java.io.IOException;
 import java.lang.System.Logger;
@@ -31,7 +29,9 @@ import java.net.URI;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.IntBuffer;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.function.Predicate;
 
@@ -52,17 +52,44 @@ public class BrotherQLDeviceUsb implements BrotherQLDevice {
     /**
      * The vendor ID of the Brother QL Printer.
      */
-    private static final short BROTHER_VENDOR_ID = 0x04f9;
+    static final short BROTHER_VENDOR_ID = 0x04f9;
+
+    /**
+     * The size of the bulk transfers of raster data, rounded down to a multiple of the endpoint max packet size.
+     */
+    private static final int WRITE_CHUNK_SIZE = 16384;
+
+    /**
+     * The maximum number of direct buffers kept for reuse.
+     */
+    private static final int MAX_POOLED_BUFFERS = 4;
+
+    /**
+     * The delay in milliseconds before reading again after the printer answered with an empty packet.
+     */
+    private static final int EMPTY_READ_DELAY_MS = 10;
+
+    /**
+     * The delay in milliseconds between two lookups of a disconnected printer.
+     */
+    private static final int RECONNECT_POLL_MS = 250;
 
     @Getter
     private BrotherQLModel model;
 
     private final URI uri;
+    private String serial;
+    private volatile boolean disconnected;
     private Context context;
     private DeviceHandle handle;
     private DeviceDescriptor deviceDescriptor;
     private EndpointDescriptor epIn;
     private EndpointDescriptor epOut;
+    private final Deque<ByteBuffer> bufferPool = new ArrayDeque<>();
+    private final IntBuffer writeTransferred = BufferUtils.allocateIntBuffer();
+    private final IntBuffer readTransferred = BufferUtils.allocateIntBuffer();
+    private final ByteBuffer readBuffer = BufferUtils.allocateByteBuffer(STATUS_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private volatile BrotherQLStatusMonitor statusMonitor;
 
     /**
      * Construct a backend for the first USB Brother printer found.
@@ -79,12 +106,6 @@ public class BrotherQLDeviceUsb implements BrotherQLDevice {
     public BrotherQLDeviceUsb(URI uri) {
         this.uri = uri;
         this.handle = null;
-        this.context = new Context();
-
-        int result = LibUsb.init(context);
-        if (result != LibUsb.SUCCESS)
-            throw new LibUsbException(Rx.msg("libusb.initerror"), result);
-        LibUsb.setOption(context, LibUsb.OPTION_LOG_LEVEL, LibUsb.LOG_LEVEL_INFO);
 
         if (uri != null) {
             if (!"usb".equals(uri.getScheme())) {
@@ -103,8 +124,74 @@ public class BrotherQLDeviceUsb implements BrotherQLDevice {
             throw new IllegalStateException(Rx.msg("libusb.alreadyopened"));
         }
 
+        open(getModelFromUri(uri), getSerialFromUri(uri));
+    }
+
+    private void open(BrotherQLModel requestedModel, String requestedSerial) throws BrotherQLException {
+        context = UsbContext.acquire();
+        try {
+            claimDevice(requestedModel, requestedSerial);
+            disconnected = false;
+        } catch (BrotherQLException | RuntimeException e) {
+            if (handle != null) {
+                LibUsb.close(handle);
+                handle = null;
+            }
+            UsbContext.release();
+            context = null;
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for the printer to be connected again, polling the {@link BrotherQLUsbRegistry}, and open it again.
+     * The printer is identified by the serial number read when it was opened. If the serial number could not be
+     * read, any printer of the same model is accepted.
+     *
+     * @param timeout how long to wait in milliseconds
+     * @return true if the printer was opened again, false if it did not come back within the timeout
+     * @throws BrotherQLException if the printer came back but could not be opened
+     */
+    @Override
+    public boolean reconnect(long timeout) throws BrotherQLException {
+        BrotherQLModel lostModel = model;
+        String lostSerial = serial;
+        close();
+        if (lostSerial == null) {
+            LOGGER.log(Level.WARNING, "Serial number of printer {0} unknown, reconnecting to any printer of this model",
+                    lostModel);
+        }
+
+        long deadline = System.currentTimeMillis() + timeout;
+        while (true) {
+            BrotherQLUsbRegistry.Entry entry = BrotherQLUsbRegistry.getInstance().find(lostModel, lostSerial);
+            if (entry != null) {
+                LibUsb.unrefDevice(entry.device);
+                LOGGER.log(Level.INFO, "Printer {0} connected again", lostModel);
+                open(lostModel, lostSerial);
+                return true;
+            }
+            if (System.currentTimeMillis() + RECONNECT_POLL_MS > deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(RECONNECT_POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public boolean isDisconnected() {
+        BrotherQLStatusMonitor monitor = statusMonitor;
+        return disconnected || (monitor != null && monitor.isDisconnected());
+    }
+
+    private void claimDevice(BrotherQLModel requestedModel, String requestedSerial) throws BrotherQLException {
         // Find the requested Brother device
-        Device device = findDevice(uri);
+        Device device = findDevice(requestedModel, requestedSerial);
         if (device == null) {
             throw new BrotherQLException(Rx.msg("libusb.nodevicelist"));
         }
@@ -122,10 +209,8 @@ public class BrotherQLDeviceUsb implements BrotherQLDevice {
             case LibUsb.SUCCESS:
                 break;
             case LibUsb.ERROR_NO_DEVICE:
-                LibUsb.close(handle);
                 throw new BrotherQLException(Rx.msg("libusb.nodevice"));
             default:
-                LibUsb.close(handle);
                 throw new BrotherQLException(Rx.msg("libusb.noconfig"));
         }
 
@@ -142,62 +227,24 @@ public class BrotherQLDeviceUsb implements BrotherQLDevice {
             case LibUsb.SUCCESS:
                 break;
             case LibUsb.ERROR_NOT_FOUND:
-                LibUsb.close(handle);
                 throw new BrotherQLException(Rx.msg("libusb.notfound"));
             case LibUsb.ERROR_BUSY:
-                LibUsb.close(handle);
                 throw new BrotherQLException(Rx.msg("libusb.busy"));
             case LibUsb.ERROR_NO_DEVICE:
-                LibUsb.close(handle);
                 throw new BrotherQLException(Rx.msg("libusb.nodevice"));
             default:
-                LibUsb.close(handle);
                 throw new BrotherQLException(Rx.msg("libusb.noclaim"));
         }
     }
 
     /**
-     * List the detected Brother USB devices.
+     * List the detected Brother USB devices, see {@link BrotherQLUsbRegistry}.
      *
      * @return the string identifier of the detected printers
      * @throws BrotherQLException if a libusb error occurred while getting the device list
      */
     public static List<String> listDevices() throws BrotherQLException {
-        LibUsb.init(null);
-        List<String> devices = new ArrayList<>();
-        DeviceList list = new DeviceList();
-        int result = LibUsb.getDeviceList(null, list);
-        if (result < 0) {
-            LibUsb.exit(null);
-            throw new BrotherQLException(Rx.msg("libusb.nodevicelist"), result);
-        }
-
-        try {
-            // Iterate over all devices and scan for the right one
-            for (Device device : list) {
-                DeviceDescriptor descriptor = new DeviceDescriptor();
-                result = LibUsb.getDeviceDescriptor(device, descriptor);
-                if (result != LibUsb.SUCCESS) {
-                    throw new BrotherQLException(Rx.msg("libusb.devicereadfailure"), result);
-                }
-
-                BrotherQLModel pId = BrotherQLModel.fromUsbProductId(descriptor.idProduct());
-                if (descriptor.idVendor() == BROTHER_VENDOR_ID && pId != null) {
-                    DeviceHandle deviceHandle = openDevice(device);
-                    String deviceSerial = LibUsb.getStringDescriptor(deviceHandle, descriptor.iSerialNumber());
-                    String uri = String.format("usb://Brother/%s?serial=%s", pId, deviceSerial);
-                    devices.add(uri);
-                    LibUsb.close(deviceHandle);
-                }
-            }
-        } finally {
-            // Ensure the allocated device list is freed
-            LibUsb.freeDeviceList(list, true);
-            LibUsb.exit(null);
-        }
-
-        // Device not found
-        return devices;
+        return BrotherQLUsbRegistry.getInstance().listDevices();
     }
 
     @Override
@@ -234,58 +281,41 @@ public class BrotherQLDeviceUsb implements BrotherQLDevice {
     /**
      * Find a Brother USB device that we know, based on BrotherQLModel enum.
      *
+     * @param requestedModel  the model of the printer, or null for any model
+     * @param requestedSerial the serial number of the printer, or null for any serial number
      * @return the device, if found, null otherwise
      * @throws BrotherQLException if a libusb error occurred while getting the device list
      */
-    private Device findDevice(URI uri) throws BrotherQLException {
-        // Read the USB device list
-        DeviceList list = new DeviceList();
-        int result = LibUsb.getDeviceList(context, list);
-        if (result < 0) {
-            throw new BrotherQLException(Rx.msg("libusb.nodevicelist"), result);
+    private Device findDevice(BrotherQLModel requestedModel, String requestedSerial) throws BrotherQLException {
+        BrotherQLUsbRegistry.Entry entry = BrotherQLUsbRegistry.getInstance().find(requestedModel, requestedSerial);
+        if (entry == null) {
+            // Device not found
+            return null;
         }
 
-        BrotherQLModel model = getModelFromUri(uri);
-        String serial = getSerialFromUri(uri);
-
         try {
-            // Iterate over all devices and scan for the right one
-            for (Device device : list) {
-                DeviceDescriptor descriptor = new DeviceDescriptor();
-                result = LibUsb.getDeviceDescriptor(device, descriptor);
-                if (result != LibUsb.SUCCESS) {
-                    throw new BrotherQLException(Rx.msg("libusb.devicereadfailure"), result);
-                }
-
-                BrotherQLModel pId = BrotherQLModel.fromUsbProductId(descriptor.idProduct());
-                if (descriptor.idVendor() == BROTHER_VENDOR_ID && pId != null && (model == null || pId == model)) {
-                    // A known Brother device was found !
-                    DeviceHandle deviceHandle = openDevice(device);
-                    String deviceSerial = LibUsb.getStringDescriptor(deviceHandle, descriptor.iSerialNumber());
-                    if (serial == null || serial.equals(deviceSerial)) {
-                        this.handle = deviceHandle;
-                        this.deviceDescriptor = descriptor;
-                        this.model = pId;
-                        LOGGER.log(Level.DEBUG, "Found printer {0}", this.model);
-                        return device;
-                    } else {
-                        // Wrong device, continue
-                        LOGGER.log(Level.DEBUG, "Brother printer {0} s/n {1} not matching requested URI {2}",
-                                pId, deviceSerial, uri);
-                        LibUsb.close(deviceHandle);
-                    }
-                }
-            }
+            // The handle keeps a reference to the device
+            this.handle = openDevice(entry.device);
+            this.deviceDescriptor = entry.descriptor;
+            this.model = entry.model;
+            this.serial = requestedSerial == null ? readSerial(handle, entry.descriptor) : requestedSerial;
+            LOGGER.log(Level.DEBUG, "Found printer {0}", this.model);
+            return entry.device;
         } finally {
-            // Ensure the allocated device list is freed
-            LibUsb.freeDeviceList(list, true);
+            LibUsb.unrefDevice(entry.device);
         }
+    }
 
-        // Device not found
-        return null;
+    private static String readSerial(DeviceHandle handle, DeviceDescriptor descriptor) {
+        // Only needed to find the same printer when reconnecting
+        String serial = LibUsb.getStringDescriptor(handle, descriptor.iSerialNumber());
+        if (serial == null) {
+            LOGGER.log(Level.WARNING, "Could not read the serial number of the printer");
+        }
+        return serial;
     }
 
-    private static DeviceHandle openDevice(Device device) throws BrotherQLException {
+    static DeviceHandle openDevice(Device device) throws BrotherQLException {
         // Open a connection to the device
         DeviceHandle deviceHandle = new DeviceHandle();
         int result = LibUsb.open(device, deviceHandle);
@@ -351,41 +381,152 @@ public class BrotherQLDeviceUsb implements BrotherQLDevice {
 
     @Override
     public void write(byte[] data, long timeout) throws BrotherQLException {
-        LOGGER.log(Level.DEBUG, "Tx: " + Hex.toString(data));
+        ByteBuffer buffer = acquireBuffer(data.length);
+        try {
+            buffer.put(data).flip();
+            write(buffer, timeout);
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
 
-        ByteBuffer buffer = BufferUtils.allocateByteBuffer(data.length);
-        buffer.put(data);
+    @Override
+    public void write(ByteBuffer data, long timeout) throws BrotherQLException {
+        if (!data.isDirect()) {
+            // Native transfers require a direct buffer
+            ByteBuffer buffer = acquireBuffer(data.remaining());
+            try {
+                buffer.put(data).flip();
+                write(buffer, timeout);
+            } finally {
+                releaseBuffer(buffer);
+            }
+            return;
+        }
+
+        if (LOGGER.isLoggable(Level.DEBUG)) {
+            LOGGER.log(Level.DEBUG, "Tx: " + Hex.toString(data.slice()));
+        }
         try {
-            write(handle, epOut, buffer, timeout);
+            synchronized (writeTransferred) {
+                while (data.hasRemaining()) {
+                    // The transfer covers the whole capacity of the buffer : pass a slice of the remaining bytes
+                    data.position(data.position() + write(handle, epOut, data.slice(), writeTransferred, timeout));
+                }
+            }
         } catch (IOException e) {
             throw new BrotherQLException(Rx.msg("error.senderror"), e);
         }
     }
 
-    private static void write(DeviceHandle handle, EndpointDescriptor epOut, ByteBuffer buffer, long timeout) throws IOException {
-        IntBuffer transferred = BufferUtils.allocateIntBuffer();
-
+    private int write(DeviceHandle handle, EndpointDescriptor epOut, ByteBuffer buffer, IntBuffer transferred,
+                      long timeout) throws IOException {
+        transferred.clear();
         int result = LibUsb.bulkTransfer(handle, epOut.bEndpointAddress(), buffer, transferred, timeout);
+        if (result == LibUsb.ERROR_NO_DEVICE) {
+            disconnected = true;
+        }
         if (result != LibUsb.SUCCESS) {
             throw new IOException(Rx.msg("error.senderror") + " (" + result + ")");
         }
+        int count = transferred.get(0);
+        if (count <= 0 && buffer.hasRemaining()) {
+            throw new IOException(Rx.msg("error.senderror") + " (" + count + ")");
+        }
+        return count;
+    }
+
+    /**
+     * Get a direct buffer from the pool of the device, or allocate a new one if none is large enough.
+     *
+     * @param capacity the minimum capacity of the buffer
+     * @return a cleared direct buffer, whose limit is the requested capacity
+     */
+    @Override
+    public ByteBuffer acquireBuffer(int capacity) {
+        synchronized (bufferPool) {
+            for (Iterator<ByteBuffer> it = bufferPool.iterator(); it.hasNext(); ) {
+                ByteBuffer buffer = it.next();
+                if (buffer.capacity() >= capacity) {
+                    it.remove();
+                    buffer.clear().limit(capacity);
+                    return buffer;
+                }
+            }
+        }
+        // Small buffers are rounded up, so that any pooled buffer can hold a chunk of raster data
+        ByteBuffer buffer = BufferUtils.allocateByteBuffer(Math.max(capacity, WRITE_CHUNK_SIZE));
+        buffer.limit(capacity);
+        return buffer;
+    }
+
+    @Override
+    public void releaseBuffer(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            return;
+        }
+        synchronized (bufferPool) {
+            if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+                bufferPool.push(buffer);
+            }
+        }
+    }
+
+    @Override
+    public int getPreferredWriteSize() {
+        if (epOut == null) {
+            return 0;
+        }
+        int maxPacketSize = epOut.wMaxPacketSize() & 0x7FF;
+        return maxPacketSize == 0 ? WRITE_CHUNK_SIZE : WRITE_CHUNK_SIZE - WRITE_CHUNK_SIZE % maxPacketSize;
+    }
+
+    @Override
+    public synchronized BrotherQLStatusMonitor startStatusMonitor() throws BrotherQLException {
+        if (handle == null) {
+            throw new IllegalStateException("Device is not open");
+        }
+        if (statusMonitor == null) {
+            statusMonitor = new BrotherQLStatusMonitor(handle, epIn.bEndpointAddress(), model);
+        }
+        return statusMonitor;
     }
 
     @Override
     public ByteBuffer readStatus(long timeout) {
-        ByteBuffer buffer = BufferUtils.allocateByteBuffer(STATUS_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        BrotherQLStatusMonitor monitor = statusMonitor;
+        if (monitor != null) {
+            return monitor.poll(timeout);
+        }
 
-        int read = rawread(handle, epIn, buffer, timeout);
-        if (read == 0) {
+        ByteBuffer buffer = readBuffer;
+        buffer.clear();
+
+        // The bulk transfer blocks until the printer sends a status. Some printers answer with an empty
+        // packet when they have nothing to say : wait a little and read again until the timeout.
+        long deadline = System.currentTimeMillis() + timeout;
+        int result = rawread(handle, epIn, buffer, timeout);
+        while (result == LibUsb.SUCCESS && readTransferred.get(0) == 0) {
+            long remaining = timeout == 0 ? 0 : deadline - System.currentTimeMillis();
+            if (timeout != 0 && remaining <= EMPTY_READ_DELAY_MS) {
+                return null;
+            }
             try {
-                Thread.sleep(20);
-                read = rawread(handle, epIn, buffer, timeout);
+                Thread.sleep(EMPTY_READ_DELAY_MS);
             } catch (InterruptedException e) {
-                // Ignore
+                Thread.currentThread().interrupt();
+                return null;
             }
+            result = rawread(handle, epIn, buffer, timeout == 0 ? 0 : remaining - EMPTY_READ_DELAY_MS);
         }
 
-        if (read > 0 && read < STATUS_SIZE) {
+        // Give up on errors such as a disconnected printer, there is no point in reading again
+        int read = readTransferred.get(0);
+        if ((result != LibUsb.SUCCESS && result != LibUsb.ERROR_TIMEOUT) || read == 0) {
+            return null;
+        }
+
+        if (read < STATUS_SIZE) {
             LOGGER.log(Level.WARNING, "Incomplete read : " + read + " < " + 32 + " bytes : " + Hex.toString(buffer));
             return null;
         }
@@ -393,28 +534,47 @@ public class BrotherQLDeviceUsb implements BrotherQLDevice {
         return buffer;
     }
 
-    private static int rawread(DeviceHandle handle, EndpointDescriptor epIn, ByteBuffer buffer, long timeout) {
-        IntBuffer transferred = BufferUtils.allocateIntBuffer();
+    /**
+     * Read from the IN endpoint. The number of bytes read is available in <code>readTransferred</code>.
+     *
+     * @return the libusb result code
+     */
+    private int rawread(DeviceHandle handle, EndpointDescriptor epIn, ByteBuffer buffer, long timeout) {
+        IntBuffer transferred = readTransferred;
+        transferred.clear();
+        transferred.put(0, 0);
         int result = LibUsb.bulkTransfer(handle, epIn.bEndpointAddress(), buffer, transferred, timeout);
-        if (result != LibUsb.SUCCESS) {
+        if (result == LibUsb.ERROR_NO_DEVICE) {
+            disconnected = true;
+        }
+        if (result == LibUsb.ERROR_TIMEOUT) {
+            LOGGER.log(Level.DEBUG, "No status received within " + timeout + " ms");
+        } else if (result != LibUsb.SUCCESS) {
             LOGGER.log(Level.WARNING, Rx.msg("error.readerror") + result);
         }
 
-        int read = transferred.get();
-        if (read > 0 && LOGGER.isLoggable(Level.DEBUG)) {
+        if (transferred.get(0) > 0 && LOGGER.isLoggable(Level.DEBUG)) {
             LOGGER.log(Level.DEBUG, "Rx: " + Hex.toString(buffer));
         }
-        return read;
+        return result;
     }
 
     @Override
     public void close() {
+        synchronized (this) {
+            if (statusMonitor != null) {
+                statusMonitor.close();
+                statusMonitor = null;
+            }
+        }
         if (handle != null && deviceDescriptor != null) {
             LibUsb.close(handle);
             handle = null;
         }
-        LibUsb.exit(context);
-        context = new Context();
+        if (context != null) {
+            UsbContext.release();
+            context = null;
+        }
     }
 
     @Override
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2024 Cédric de Launois
+ * See LICENSE for licensing information.
+ *
+ * Java USB Driver for printing with Brother QL printers.
+ */
+package org.delaunois.brotherql.backend;
+
+import lombok.Getter;
+import org.delaunois.brotherql.BrotherQLException;
+import org.delaunois.brotherql.BrotherQLModel;
+import org.delaunois.brotherql.BrotherQLStatus;
+import org.delaunois.brotherql.util.Hex;
+import org.delaunois.brotherql.util.Rx;
+import org.usb4java.BufferUtils;
+import org.usb4java.DeviceHandle;
+import org.usb4java.LibUsb;
+import org.usb4java.Transfer;
+
+import java.io.Closeable;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.delaunois.brotherql.protocol.QL.STATUS_SIZE;
+
+/**
+ * A background monitor of the status of a USB printer.
+ * <p>
+ * The monitor keeps an asynchronous transfer posted on the IN endpoint of the printer, handled by the
+ * event thread of the shared libusb context. Each status sent by the printer is decoded, stored as the latest status, and pushed to the
+ * subscribers, so that errors such as an open cover or the end of the media are known as soon as the printer
+ * reports them. The statuses are also kept for {@link BrotherQLDevice#readStatus(long)}, which no longer reads
+ * the endpoint itself while the monitor runs.
+ * <p>
+ * A monitor is started with {@link BrotherQLDevice#startStatusMonitor()}, and stopped when the device is closed.
+ *
+ * @author Cedric de Launois
+ */
+public final class BrotherQLStatusMonitor implements Closeable {
+
+    private static final Logger LOGGER = System.getLogger(BrotherQLStatusMonitor.class.getName());
+
+    /**
+     * The maximum number of statuses kept for {@link BrotherQLDevice#readStatus(long)}. The oldest are dropped.
+     */
+    private static final int PENDING_CAPACITY = 16;
+
+    /**
+     * How long closing the monitor waits for the cancellation of the transfer, in milliseconds.
+     */
+    private static final long CANCEL_TIMEOUT_MS = 1000;
+
+    /**
+     * The delay in milliseconds before posting the transfer again after the printer answered with an empty packet.
+     */
+    private static final int EMPTY_READ_DELAY_MS = 10;
+
+    /**
+     * Posts the transfers again after a delay, so that the event thread shared by all the devices never waits.
+     */
+    private static final ScheduledExecutorService DELAYED_POST = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "brotherql-usb-status");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final BrotherQLModel model;
+    private final Transfer transfer;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final BlockingQueue<byte[]> pending = new ArrayBlockingQueue<>(PENDING_CAPACITY);
+    private final List<Consumer<BrotherQLStatus>> subscribers = new CopyOnWriteArrayList<>();
+    private volatile boolean running = true;
+    private volatile boolean transferPosted;
+    private volatile boolean disconnected;
+
+    /**
+     * The latest status sent by the printer, or null if none was received yet. Reading it never blocks.
+     */
+    @Getter
+    private volatile BrotherQLStatus latestStatus;
+
+    BrotherQLStatusMonitor(DeviceHandle handle, byte endpoint, BrotherQLModel model) throws BrotherQLException {
+        this.model = model;
+
+        ByteBuffer buffer = BufferUtils.allocateByteBuffer(STATUS_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.transfer = LibUsb.allocTransfer();
+        LibUsb.fillBulkTransfer(transfer, handle, endpoint, buffer, this::processTransfer, null, 0);
+        int result = LibUsb.submitTransfer(transfer);
+        if (result != LibUsb.SUCCESS) {
+            LibUsb.freeTransfer(transfer);
+            throw new BrotherQLException(Rx.msg("error.readerror") + result);
+        }
+        transferPosted = true;
+        UsbContext.startEvents();
+    }
+
+    /**
+     * Register a subscriber called with each status sent by the printer.
+     * The subscriber is called from the event thread : it must return quickly and must not close the monitor.
+     *
+     * @param subscriber the subscriber
+     */
+    public void subscribe(Consumer<BrotherQLStatus> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * Unregister a subscriber.
+     *
+     * @param subscriber the subscriber
+     */
+    public void unsubscribe(Consumer<BrotherQLStatus> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    /**
+     * Discard the statuses received but not read yet with {@link BrotherQLDevice#readStatus(long)},
+     * e.g. before sending a command whose answer is expected.
+     */
+    public void discardPending() {
+        pending.clear();
+    }
+
+    /**
+     * Tells whether the monitor still receives statuses.
+     *
+     * @return true until the monitor is closed or the device is disconnected
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Tells whether the monitor stopped because the printer was disconnected.
+     *
+     * @return true if the printer is no longer connected
+     */
+    boolean isDisconnected() {
+        return disconnected;
+    }
+
+    /**
+     * Wait for the next status not read yet.
+     *
+     * @param timeout the maximum time to wait in milliseconds, or 0 to wait without limit
+     * @return the status bytes, or null if no status was received within the timeout
+     */
+    ByteBuffer poll(long timeout) {
+        try {
+            byte[] frame = timeout == 0 ? pending.take() : pending.poll(timeout, TimeUnit.MILLISECONDS);
+            return frame == null ? null : ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Stop the monitor : cancel the posted transfer and wait for its cancellation.
+     */
+    @Override
+    public void close() {
+        running = false;
+        if (transferPosted) {
+            LibUsb.cancelTransfer(transfer);
+        }
+        try {
+            if (stopped.await(CANCEL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                LibUsb.freeTransfer(transfer);
+            } else {
+                // A transfer still posted is leaked rather than freed while in use
+                LOGGER.log(Level.WARNING, "Status transfer not cancelled within " + CANCEL_TIMEOUT_MS + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void processTransfer(Transfer completed) {
+        int status = completed.status();
+        int length = completed.actualLength();
+        if (status == LibUsb.TRANSFER_COMPLETED && length == STATUS_SIZE) {
+            byte[] frame = new byte[STATUS_SIZE];
+            ByteBuffer data = completed.buffer().duplicate();
+            data.clear();
+            data.get(frame);
+            publish(frame);
+        } else if (status == LibUsb.TRANSFER_COMPLETED && length > 0) {
+            LOGGER.log(Level.WARNING, "Incomplete read : " + length + " < " + STATUS_SIZE + " bytes");
+        } else if (status == LibUsb.TRANSFER_NO_DEVICE) {
+            LOGGER.log(Level.WARNING, Rx.msg("libusb.nodevice"));
+            disconnected = true;
+            running = false;
+        } else if (status != LibUsb.TRANSFER_COMPLETED && status != LibUsb.TRANSFER_CANCELLED) {
+            LOGGER.log(Level.WARNING, Rx.msg("error.readerror") + status);
+        }
+
+        if (running && status == LibUsb.TRANSFER_COMPLETED && length == 0) {
+            // Empty packet : do not post the transfer again right away
+            transferPosted = false;
+            DELAYED_POST.schedule(this::post, EMPTY_READ_DELAY_MS, TimeUnit.MILLISECONDS);
+            return;
+        }
+        post();
+    }
+
+    /**
+     * Post the transfer again, unless the monitor was closed meanwhile.
+     */
+    private void post() {
+        transferPosted = running && LibUsb.submitTransfer(transfer) == LibUsb.SUCCESS;
+        if (transferPosted && !running) {
+            // Closed while posting the transfer again
+            LibUsb.cancelTransfer(transfer);
+        } else if (!transferPosted) {
+            if (running) {
+                LOGGER.log(Level.WARNING, "Status monitor stopped, could not post the transfer");
+                running = false;
+            }
+            stopped.countDown();
+        }
+    }
+
+    private void publish(byte[] frame) {
+        if (LOGGER.isLoggable(Level.DEBUG)) {
+            LOGGER.log(Level.DEBUG, "Rx: " + Hex.toString(frame));
+        }
+        BrotherQLStatus status = new BrotherQLStatus(frame, model);
+        latestStatus = status;
+        while (!pending.offer(frame)) {
+            pending.poll();
+        }
+        for (Consumer<BrotherQLStatus> subscriber : subscribers) {
+            try {
+                subscriber.accept(status);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Status subscriber failed", e);
+            }
+        }
+    }
+
+}
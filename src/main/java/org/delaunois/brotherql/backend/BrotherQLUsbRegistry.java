@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2024 Cédric de Launois
+ * See LICENSE for licensing information.
+ *
+ * Java USB Driver for printing with Brother QL printers.
+ */
+package org.delaunois.brotherql.backend;
+
+import org.delaunois.brotherql.BrotherQLException;
+import org.delaunois.brotherql.BrotherQLModel;
+import org.delaunois.brotherql.util.Rx;
+import org.usb4java.Context;
+import org.usb4java.Device;
+import org.usb4java.DeviceDescriptor;
+import org.usb4java.DeviceHandle;
+import org.usb4java.DeviceList;
+import org.usb4java.HotplugCallbackHandle;
+import org.usb4java.LibUsb;
+
+import java.io.Closeable;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.delaunois.brotherql.backend.BrotherQLDeviceUsb.BROTHER_VENDOR_ID;
+
+/**
+ * The registry of the Brother USB devices connected to this computer.
+ * <p>
+ * The registry enumerates the USB bus once, then follows the devices plugged and unplugged through the libusb
+ * hotplug events, when the platform supports them. Otherwise, the bus is enumerated again on each query,
+ * which does not involve any USB transfer. The model and the serial number of each device are kept in memory :
+ * a device is opened only once to read its serial number, the first time it is needed.
+ * <p>
+ * The registry is created on first use and keeps the shared USB context in use until it is closed.
+ * It is thread-safe.
+ *
+ * @author Cedric de Launois
+ */
+public final class BrotherQLUsbRegistry implements Closeable {
+
+    private static final Logger LOGGER = System.getLogger(BrotherQLUsbRegistry.class.getName());
+
+    private static BrotherQLUsbRegistry instance;
+
+    private final Context context;
+    private final HotplugCallbackHandle callbackHandle;
+    private final Map<Integer, Entry> devices = new LinkedHashMap<>();
+    private final Queue<Event> events = new ConcurrentLinkedQueue<>();
+    private boolean closed = false;
+
+    private BrotherQLUsbRegistry() throws BrotherQLException {
+        context = UsbContext.acquire();
+        if (!LibUsb.hasCapability(LibUsb.CAP_HAS_HOTPLUG)) {
+            LOGGER.log(Level.DEBUG, "USB hotplug not supported, the bus is enumerated on each query");
+            callbackHandle = null;
+            return;
+        }
+
+        // The devices already connected are reported as arrived during the registration.
+        // The product cannot be filtered here : the devices which are not printers are dropped on arrival.
+        callbackHandle = new HotplugCallbackHandle();
+        int result = LibUsb.hotplugRegisterCallback(context,
+                LibUsb.HOTPLUG_EVENT_DEVICE_ARRIVED | LibUsb.HOTPLUG_EVENT_DEVICE_LEFT,
+                LibUsb.HOTPLUG_ENUMERATE, BROTHER_VENDOR_ID, LibUsb.HOTPLUG_MATCH_ANY, LibUsb.HOTPLUG_MATCH_ANY,
+                (ctx, device, event, userData) -> onHotplug(device, event), null, callbackHandle);
+        if (result != LibUsb.SUCCESS) {
+            UsbContext.release();
+            throw new BrotherQLException(Rx.msg("libusb.nodevicelist"), result);
+        }
+        UsbContext.startEvents();
+    }
+
+    /**
+     * Get the registry, creating it if not in use.
+     *
+     * @return the registry
+     * @throws BrotherQLException if the USB devices could not be enumerated
+     */
+    public static synchronized BrotherQLUsbRegistry getInstance() throws BrotherQLException {
+        if (instance == null) {
+            instance = new BrotherQLUsbRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * List the connected Brother USB devices.
+     *
+     * @return the string identifier of the devices, like <code>usb://Brother/QL-700?serial=XXXX</code>
+     * @throws BrotherQLException if a device could not be enumerated or opened to read its serial number
+     */
+    public List<String> listDevices() throws BrotherQLException {
+        List<Entry> entries = snapshot();
+        List<String> uris = new ArrayList<>();
+        try {
+            for (Entry entry : entries) {
+                uris.add(String.format("usb://Brother/%s?serial=%s", entry.model, entry.getSerial()));
+            }
+        } finally {
+            unref(entries);
+        }
+        return uris;
+    }
+
+    /**
+     * Close the registry and release the USB context. The next call to {@link #getInstance()} creates
+     * a new registry.
+     */
+    @Override
+    public void close() {
+        synchronized (BrotherQLUsbRegistry.class) {
+            if (instance == this) {
+                instance = null;
+            }
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (callbackHandle != null) {
+                LibUsb.hotplugDeregisterCallback(context, callbackHandle);
+            }
+            applyEvents();
+            for (Entry entry : devices.values()) {
+                LibUsb.unrefDevice(entry.device);
+            }
+            devices.clear();
+        }
+        UsbContext.release();
+    }
+
+    /**
+     * Find a connected device.
+     *
+     * @param model  the model of the device, or null for any model
+     * @param serial the serial number of the device, or null for any serial number
+     * @return the first matching device, or null if none. The libusb device is referenced : the caller
+     * must unreference it with <code>LibUsb.unrefDevice</code> once opened.
+     * @throws BrotherQLException if a device could not be enumerated or opened to read its serial number
+     */
+    Entry find(BrotherQLModel model, String serial) throws BrotherQLException {
+        List<Entry> entries = snapshot();
+        Entry found = null;
+        try {
+            for (Entry entry : entries) {
+                if ((model == null || entry.model == model) && (serial == null || serial.equals(entry.getSerial()))) {
+                    found = entry;
+                    break;
+                }
+            }
+        } finally {
+            for (Entry entry : entries) {
+                if (entry != found) {
+                    LibUsb.unrefDevice(entry.device);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Get the known devices, after applying the changes since the last query.
+     * The libusb devices are referenced, so that they remain valid if unplugged meanwhile.
+     */
+    private synchronized List<Entry> snapshot() throws BrotherQLException {
+        if (closed) {
+            throw new IllegalStateException("Registry is closed");
+        }
+        if (callbackHandle == null) {
+            enumerate();
+        } else {
+            applyEvents();
+        }
+        List<Entry> entries = new ArrayList<>(devices.values());
+        for (Entry entry : entries) {
+            LibUsb.refDevice(entry.device);
+        }
+        return entries;
+    }
+
+    private static void unref(List<Entry> entries) {
+        for (Entry entry : entries) {
+            LibUsb.unrefDevice(entry.device);
+        }
+    }
+
+    private int onHotplug(Device device, int event) {
+        // Called by the event thread : no USB transfer here, the registry is updated on the next query
+        if (event == LibUsb.HOTPLUG_EVENT_DEVICE_ARRIVED) {
+            events.add(new Event(key(device), LibUsb.refDevice(device)));
+        } else {
+            events.add(new Event(key(device), null));
+        }
+        return 0;
+    }
+
+    private void applyEvents() {
+        Event event;
+        while ((event = events.poll()) != null) {
+            Entry removed = devices.remove(event.key);
+            if (removed != null) {
+                LibUsb.unrefDevice(removed.device);
+            }
+            if (event.device != null) {
+                try {
+                    DeviceDescriptor descriptor = readDescriptor(event.device);
+                    if (isPrinter(descriptor.idVendor(), descriptor.idProduct())) {
+                        devices.put(event.key, new Entry(event.device, descriptor));
+                    } else {
+                        LibUsb.unrefDevice(event.device);
+                    }
+                } catch (BrotherQLException e) {
+                    LOGGER.log(Level.WARNING, e.getMessage());
+                    LibUsb.unrefDevice(event.device);
+                }
+            }
+        }
+    }
+
+    private void enumerate() throws BrotherQLException {
+        DeviceList list = new DeviceList();
+        int result = LibUsb.getDeviceList(context, list);
+        if (result < 0) {
+            throw new BrotherQLException(Rx.msg("libusb.nodevicelist"), result);
+        }
+
+        try {
+            Set<Integer> present = new HashSet<>();
+            for (Device device : list) {
+                DeviceDescriptor descriptor = readDescriptor(device);
+                if (isPrinter(descriptor.idVendor(), descriptor.idProduct())) {
+                    int key = key(device);
+                    present.add(key);
+                    if (!devices.containsKey(key)) {
+                        devices.put(key, new Entry(LibUsb.refDevice(device), descriptor));
+                    }
+                }
+            }
+
+            Iterator<Entry> it = devices.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (!present.contains(key(entry.device))) {
+                    LibUsb.unrefDevice(entry.device);
+                    it.remove();
+                }
+            }
+        } finally {
+            // Ensure the allocated device list is freed
+            LibUsb.freeDeviceList(list, true);
+        }
+    }
+
+    /**
+     * Tells whether a USB device is a supported Brother printer. Other Brother devices, such as scanners,
+     * are ignored.
+     *
+     * @param vendorId  the USB vendor ID of the device
+     * @param productId the USB product ID of the device
+     * @return true if the device is a known Brother printer model
+     */
+    static boolean isPrinter(int vendorId, int productId) {
+        return vendorId == BROTHER_VENDOR_ID && BrotherQLModel.fromUsbProductId(productId) != BrotherQLModel.UNKNOWN;
+    }
+
+    private static int key(Device device) {
+        // The address is assigned anew when a device is plugged again
+        return LibUsb.getBusNumber(device) << 8 | LibUsb.getDeviceAddress(device);
+    }
+
+    private static DeviceDescriptor readDescriptor(Device device) throws BrotherQLException {
+        DeviceDescriptor descriptor = new DeviceDescriptor();
+        int result = LibUsb.getDeviceDescriptor(device, descriptor);
+        if (result != LibUsb.SUCCESS) {
+            throw new BrotherQLException(Rx.msg("libusb.devicereadfailure"), result);
+        }
+        return descriptor;
+    }
+
+    /**
+     * A connected Brother device.
+     */
+    static final class Entry {
+
+        final Device device;
+        final DeviceDescriptor descriptor;
+        final BrotherQLModel model;
+        private volatile String serial;
+
+        Entry(Device device, DeviceDescriptor descriptor) {
+            this.device = device;
+            this.descriptor = descriptor;
+            this.model = BrotherQLModel.fromUsbProductId(descriptor.idProduct());
+        }
+
+        /**
+         * Get the serial number, opening the device to read it the first time.
+         */
+        String getSerial() throws BrotherQLException {
+            if (serial == null) {
+                DeviceHandle handle = BrotherQLDeviceUsb.openDevice(device);
+                try {
+                    serial = LibUsb.getStringDescriptor(handle, descriptor.iSerialNumber());
+                } finally {
+                    LibUsb.close(handle);
+                }
+            }
+            return serial;
+        }
+    }
+
+    /**
+     * A device plugged (with the referenced device) or unplugged (without device).
+     */
+    private static final class Event {
+
+        private final int key;
+        private final Device device;
+
+        Event(int key, Device device) {
+            this.key = key;
+            this.device = device;
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2024 Cédric de Launois
+ * See LICENSE for licensing information.
+ *
+ * Java USB Driver for printing with Brother QL printers.
+ */
+package org.delaunois.brotherql.backend;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The selector shared by all the network printers.
+ * <p>
+ * A single thread waits for the sockets of all the printers to accept more data, and calls back the printer
+ * when its socket becomes writable. The selector is opened when first acquired, and closed when the last user
+ * releases it.
+ *
+ * @author Cedric de Launois
+ */
+final class TcpSelector {
+
+    private static final Logger LOGGER = System.getLogger(TcpSelector.class.getName());
+
+    private static TcpSelector instance;
+    private static int references = 0;
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    private TcpSelector() throws IOException {
+        selector = Selector.open();
+        thread = new Thread(this::run, "brotherql-tcp-selector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Get the shared selector, opening it if not in use yet.
+     * Each call must be followed by a call to {@link #release()} when the selector is no longer used.
+     *
+     * @return the selector
+     * @throws IOException if the selector could not be opened
+     */
+    static synchronized TcpSelector acquire() throws IOException {
+        if (references == 0) {
+            instance = new TcpSelector();
+        }
+        references++;
+        return instance;
+    }
+
+    /**
+     * Release the shared selector. The last release stops the selector thread.
+     */
+    static synchronized void release() {
+        if (references == 0) {
+            throw new IllegalStateException("TCP selector not acquired");
+        }
+        references--;
+        if (references == 0) {
+            instance.stop();
+            instance = null;
+        }
+    }
+
+    /**
+     * Register a channel, in non-blocking mode, without any interest.
+     * Use {@link #setWriteInterest(SelectionKey, boolean)} to be called back when the channel becomes writable.
+     *
+     * @param channel    the channel
+     * @param onWritable the callback, called from the selector thread
+     * @return a future completed with the selection key once registered
+     */
+    CompletableFuture<SelectionKey> register(SocketChannel channel, Runnable onWritable) {
+        CompletableFuture<SelectionKey> future = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                future.complete(channel.register(selector, 0, onWritable));
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Ask to be called back, or no longer, when the channel of the given key becomes writable.
+     *
+     * @param key      the selection key
+     * @param interest true to be called back
+     */
+    void setWriteInterest(SelectionKey key, boolean interest) {
+        execute(() -> {
+            if (key.isValid()) {
+                key.interestOps(interest ? SelectionKey.OP_WRITE : 0);
+            }
+        });
+    }
+
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "TCP selector failed", e);
+                break;
+            }
+
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                if (key.isValid() && key.isWritable()) {
+                    ((Runnable) key.attachment()).run();
+                }
+            }
+        }
+
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error closing TCP selector", e);
+        }
+    }
+
+    private void stop() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
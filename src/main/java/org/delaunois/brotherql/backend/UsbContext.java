@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2024 Cédric de Launois
+ * See LICENSE for licensing information.
+ *
+ * Java USB Driver for printing with Brother QL printers.
+ */
+package org.delaunois.brotherql.backend;
+
+import org.delaunois.brotherql.util.Rx;
+import org.usb4java.Context;
+import org.usb4java.LibUsb;
+import org.usb4java.LibUsbException;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+
+/**
+ * The libusb context shared by all the USB devices and by the device discovery.
+ * <p>
+ * The context is initialized when first acquired, and exited when the last user releases it.
+ * While in use, a single event thread handles the asynchronous transfers of all the devices
+ * (see {@link BrotherQLStatusMonitor}). The thread is started by the first transfer that needs it.
+ *
+ * @author Cedric de Launois
+ */
+final class UsbContext {
+
+    private static final Logger LOGGER = System.getLogger(UsbContext.class.getName());
+
+    /**
+     * How long the event thread waits for libusb events in one call, in microseconds.
+     */
+    private static final long EVENT_TIMEOUT_US = 100_000;
+
+    private static Context context;
+    private static int references = 0;
+    private static Thread eventThread;
+    private static volatile boolean handlingEvents;
+
+    private UsbContext() {
+        // Prevent instanciation
+    }
+
+    /**
+     * Get the shared context, initializing it if not in use yet.
+     * Each call must be followed by a call to {@link #release()} when the context is no longer used.
+     *
+     * @return the context
+     * @throws LibUsbException if libusb could not be initialized
+     */
+    static synchronized Context acquire() {
+        if (references == 0) {
+            Context c = new Context();
+            int result = LibUsb.init(c);
+            if (result != LibUsb.SUCCESS)
+                throw new LibUsbException(Rx.msg("libusb.initerror"), result);
+            LibUsb.setOption(c, LibUsb.OPTION_LOG_LEVEL, LibUsb.LOG_LEVEL_INFO);
+            context = c;
+        }
+        references++;
+        return context;
+    }
+
+    /**
+     * Release the shared context. The last release stops the event thread and exits the context.
+     */
+    static synchronized void release() {
+        if (references == 0) {
+            throw new IllegalStateException("USB context not acquired");
+        }
+        references--;
+        if (references > 0) {
+            return;
+        }
+
+        if (eventThread != null) {
+            handlingEvents = false;
+            try {
+                eventThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            eventThread = null;
+        }
+        LibUsb.exit(context);
+        context = null;
+    }
+
+    /**
+     * Start the event thread, if not started yet. The context must be acquired.
+     */
+    static synchronized void startEvents() {
+        if (references == 0) {
+            throw new IllegalStateException("USB context not acquired");
+        }
+        if (eventThread == null) {
+            Context c = context;
+            handlingEvents = true;
+            eventThread = new Thread(() -> handleEvents(c), "brotherql-usb-events");
+            eventThread.setDaemon(true);
+            eventThread.start();
+        }
+    }
+
+    private static void handleEvents(Context c) {
+        while (handlingEvents) {
+            int result = LibUsb.handleEventsTimeout(c, EVENT_TIMEOUT_US);
+            if (result != LibUsb.SUCCESS && result != LibUsb.ERROR_INTERRUPTED) {
+                LOGGER.log(Level.WARNING, "libusb event error " + result);
+            }
+        }
+    }
+
+}
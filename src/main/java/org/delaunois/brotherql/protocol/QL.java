@@ -62,6 +62,16 @@ public class QL {
      */
     public static final byte[] CMD_SET_MARGIN = new byte[]{0x1B, 0x69, 0x64};
 
+    /**
+     * Select compression mode command : TIFF (PackBits) compression of the raster graphic transfer data
+     */
+    public static final byte[] CMD_SET_COMPRESSION_TIFF = new byte[]{0x4D, 0x02};
+
+    /**
+     * Zero raster graphics command : a raster line with no printed dot. Only available in compression mode.
+     */
+    public static final byte[] CMD_ZERO_RASTER_GRAPHIC = new byte[]{0x5A};
+
     /**
      * Raster graphic transfer command
      */
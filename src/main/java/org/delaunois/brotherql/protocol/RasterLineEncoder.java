@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2024 Cédric de Launois
+ * See LICENSE for licensing information.
+ *
+ * Java USB Driver for printing with Brother QL printers.
+ */
+package org.delaunois.brotherql.protocol;
+
+import lombok.Getter;
+import org.delaunois.brotherql.BrotherQLMedia;
+import org.delaunois.brotherql.util.PackBits;
+import org.delaunois.brotherql.util.RasterPage;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.delaunois.brotherql.protocol.QL.CMD_RASTER_GRAPHIC_TRANSFER;
+import static org.delaunois.brotherql.protocol.QL.CMD_TWO_COLOR_RASTER_GRAPHIC_TRANSFER_FIRST;
+import static org.delaunois.brotherql.protocol.QL.CMD_TWO_COLOR_RASTER_GRAPHIC_TRANSFER_SECOND;
+import static org.delaunois.brotherql.protocol.QL.CMD_ZERO_RASTER_GRAPHIC;
+
+/**
+ * Encodes the lines of a {@link RasterPage} into raster graphic transfer commands
+ * (<code>0x67</code> for monochrome printing, <code>0x77</code> for two-color printing).
+ * <p>
+ * The page lines are already packed in printer order, margins included (see {@link RasterPage#setBits}),
+ * so a line is encoded by copying whole bytes after the command header. The encoded line is built
+ * in a buffer that is reused from one line to the next : the buffer content is only valid until
+ * the next call to {@link #encode(RasterPage, int)}. Lines can also be encoded directly into a {@link ByteBuffer}.
+ * <p>
+ * In compressed mode (see {@link QL#CMD_SET_COMPRESSION_TIFF}), the data of each color is PackBits-encoded
+ * and the length byte following each command gives the encoded length, so that encoded lines vary in length.
+ * Blank monochrome lines are then sent as a single zero raster graphics command
+ * (see {@link QL#CMD_ZERO_RASTER_GRAPHIC}).
+ *
+ * @author Cedric de Launois
+ */
+public final class RasterLineEncoder {
+
+    /**
+     * The number of bytes of a raster line for the media.
+     */
+    @Getter
+    private final int lineSize;
+
+    /**
+     * Whether lines are encoded for two-color printing.
+     */
+    @Getter
+    private final boolean twoColor;
+
+    /**
+     * Whether the line data is PackBits-encoded.
+     */
+    @Getter
+    private final boolean compress;
+
+    /**
+     * The buffer holding the last encoded line.
+     */
+    @Getter
+    private final byte[] buffer;
+
+    // Offsets of the black and red data in the buffer
+    private final int blackOffset;
+    private final int redOffset;
+    private byte[] blankLine;
+
+    /**
+     * Construct an encoder for the given media, without compression.
+     *
+     * @param media    the media
+     * @param twoColor whether to encode lines for two-color printing
+     */
+    public RasterLineEncoder(BrotherQLMedia media, boolean twoColor) {
+        this(media, twoColor, false);
+    }
+
+    /**
+     * Construct an encoder for the given media.
+     *
+     * @param media    the media
+     * @param twoColor whether to encode lines for two-color printing
+     * @param compress whether to PackBits-encode the line data. The compression mode must have been enabled
+     *                 on the printer.
+     */
+    public RasterLineEncoder(BrotherQLMedia media, boolean twoColor, boolean compress) {
+        this.lineSize = media.rgtSizeBytes;
+        this.twoColor = twoColor;
+        this.compress = compress;
+
+        if (compress) {
+            int maxSize = 3 + PackBits.maxEncodedLength(lineSize);
+            this.buffer = new byte[twoColor ? 2 * maxSize : maxSize];
+            this.blackOffset = 3;
+            this.redOffset = -1;
+
+        } else if (twoColor) {
+            // 0x77 0x01 n [black] 0x77 0x02 n [red]
+            this.buffer = new byte[2 * (3 + lineSize)];
+            this.blackOffset = 3;
+            this.redOffset = 6 + lineSize;
+            writeHeader(0, CMD_TWO_COLOR_RASTER_GRAPHIC_TRANSFER_FIRST);
+            writeHeader(3 + lineSize, CMD_TWO_COLOR_RASTER_GRAPHIC_TRANSFER_SECOND);
+        } else {
+            // 0x67 0x00 n [black]
+            this.buffer = new byte[3 + lineSize];
+            this.blackOffset = 3;
+            this.redOffset = -1;
+            writeHeader(0, CMD_RASTER_GRAPHIC_TRANSFER);
+        }
+    }
+
+    /**
+     * Encode a line of the given page into the buffer. The red data of a two-color line is left blank
+     * when the page has no red plane.
+     *
+     * @param page the page, whose lines must be as long as the media lines
+     * @param y    the line
+     * @return the number of bytes of the encoded line, at the start of the buffer
+     * @throws IllegalArgumentException if the page lines do not match the media
+     */
+    public int encode(RasterPage page, int y) {
+        checkPage(page);
+        int offset = page.getLineOffset(y);
+        if (compress) {
+            return encodeCompressed(page, y, offset);
+        }
+
+        System.arraycopy(page.getPlane(RasterPage.BLACK), offset, buffer, blackOffset, lineSize);
+        if (twoColor) {
+            byte[] red = page.getPlane(RasterPage.RED);
+            if (red != null) {
+                System.arraycopy(red, offset, buffer, redOffset, lineSize);
+            } else {
+                Arrays.fill(buffer, redOffset, redOffset + lineSize, (byte) 0);
+            }
+        }
+        return buffer.length;
+    }
+
+    /**
+     * Encode a line of the given page at the current position of the given buffer, e.g. a direct buffer
+     * handed to the device. Uncompressed line data is copied straight from the page into the buffer.
+     * The red data of a two-color line is left blank when the page has no red plane.
+     *
+     * @param page the page, whose lines must be as long as the media lines
+     * @param y    the line
+     * @param dst  the buffer receiving the encoded line, with at least {@link #getMaxLineLength()} bytes remaining
+     * @return the number of bytes of the encoded line
+     * @throws IllegalArgumentException if the page lines do not match the media
+     * @throws java.nio.BufferOverflowException if the buffer has not enough bytes remaining
+     */
+    public int encode(RasterPage page, int y, ByteBuffer dst) {
+        checkPage(page);
+        int offset = page.getLineOffset(y);
+        if (compress) {
+            int length = encodeCompressed(page, y, offset);
+            dst.put(buffer, 0, length);
+            return length;
+        }
+
+        // The command headers are already in the buffer
+        dst.put(buffer, 0, blackOffset).put(page.getPlane(RasterPage.BLACK), offset, lineSize);
+        if (twoColor) {
+            byte[] red = page.getPlane(RasterPage.RED);
+            if (red == null) {
+                red = getBlankLine();
+                offset = 0;
+            }
+            dst.put(buffer, redOffset - blackOffset, blackOffset).put(red, offset, lineSize);
+        }
+        return buffer.length;
+    }
+
+    /**
+     * Get the maximum number of bytes of an encoded line.
+     *
+     * @return the maximum length of an encoded line
+     */
+    public int getMaxLineLength() {
+        return buffer.length;
+    }
+
+    private void checkPage(RasterPage page) {
+        if (page.getBytesPerLine() != lineSize) {
+            throw new IllegalArgumentException("Page lines must be " + lineSize + " bytes long");
+        }
+    }
+
+    private byte[] getBlankLine() {
+        if (blankLine == null) {
+            blankLine = new byte[lineSize];
+        }
+        return blankLine;
+    }
+
+    private int encodeCompressed(RasterPage page, int y, int offset) {
+        byte[] black = page.getPlane(RasterPage.BLACK);
+        if (!twoColor) {
+            if (page.isBlankLine(y)) {
+                System.arraycopy(CMD_ZERO_RASTER_GRAPHIC, 0, buffer, 0, CMD_ZERO_RASTER_GRAPHIC.length);
+                return CMD_ZERO_RASTER_GRAPHIC.length;
+            }
+            return writeCompressed(0, CMD_RASTER_GRAPHIC_TRANSFER, black, offset);
+        }
+
+        int length = writeCompressed(0, CMD_TWO_COLOR_RASTER_GRAPHIC_TRANSFER_FIRST, black, offset);
+        byte[] red = page.getPlane(RasterPage.RED);
+        if (red == null) {
+            red = getBlankLine();
+            offset = 0;
+        }
+        return length + writeCompressed(length, CMD_TWO_COLOR_RASTER_GRAPHIC_TRANSFER_SECOND, red, offset);
+    }
+
+    private int writeCompressed(int position, byte[] command, byte[] data, int offset) {
+        System.arraycopy(command, 0, buffer, position, command.length);
+        int start = position + command.length + 1;
+        int length = PackBits.encode(data, offset, lineSize, buffer, start);
+        buffer[start - 1] = (byte) length;
+        return start + length - position;
+    }
+
+    private void writeHeader(int offset, byte[] command) {
+        System.arraycopy(command, 0, buffer, offset, command.length);
+        buffer[offset + command.length] = (byte) lineSize;
+    }
+
+}
@@ -2,6 +2,7 @@ package org.delaunois.brotherql.util;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.concurrent.Executor;
 import java.util.function.Predicate;
 
 /**
@@ -141,6 +142,8 @@ public class Converter {
             new ARGB(255, 255, 255)  // white
     };
 
+    private static final int WHITE = 0xFFFFFFFF;
+
     private Converter() {
         // Prevent instanciation
     }
@@ -166,40 +169,123 @@ public class Converter {
      * @return the dithered image
      */
     public static BufferedImage floydSteinbergDithering(BufferedImage img, ARGB[] palette) {
+        if (palette.length != 2) {
+            return floydSteinbergDitheringGeneric(img, palette);
+        }
+
         int w = img.getWidth();
         int h = img.getHeight();
-        BufferedImage dithered = new BufferedImage(w, h, img.getType());
-
-        ARGB[][] d = toARGB(img);
-
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-
-                ARGB oldColor = d[y][x];
-                ARGB newColor = findClosestPaletteColor(oldColor, palette);
-                dithered.setRGB(x, y, newColor.toColor().getRGB());
+        RasterPage page = new RasterPage(w, h, false);
+        floydSteinbergDithering(img, palette, page, RasterPage.BLACK);
+        return toImage(page, img.getType(), palette[0].toColor().getRGB(), palette[1].toColor().getRGB());
+    }
 
-                ARGB err = oldColor.sub(newColor);
+    /**
+     * Convert the sRGB image to a 2-color palette using the Floyd-Steinberg dithering algorithm,
+     * and store the result in a plane of the given raster page.
+     * The first color of the palette is the printed color (e.g. black or red), the second one is the
+     * background color (white). Pixels converted to the first color are set in the plane.
+     *
+     * @param img     the image to dither
+     * @param palette the 2-color palette to use
+     * @param page    the raster page receiving the dithered pixels, with the same dimensions as the image
+     * @param plane   the plane of the page to fill, {@link RasterPage#BLACK} or {@link RasterPage#RED}
+     * @throws IllegalArgumentException if the palette does not contain exactly 2 colors
+     */
+    public static void floydSteinbergDithering(BufferedImage img, ARGB[] palette, RasterPage page, int plane) {
+        floydSteinbergDithering(img, palette, page, plane, null, 1);
+    }
 
-                if (x + 1 < w) {
-                    d[y][x + 1] = d[y][x + 1].add(err.mul(7. / 16));
-                }
+    /**
+     * Convert the sRGB image to a 2-color palette using the Floyd-Steinberg dithering algorithm, with the rows
+     * processed in parallel as a wavefront, and store the result in a plane of the given raster page.
+     * The result is identical to the one of {@link #floydSteinbergDithering(BufferedImage, ARGB[], RasterPage, int)}.
+     *
+     * @param img         the image to dither
+     * @param palette     the 2-color palette to use
+     * @param page        the raster page receiving the dithered pixels, with the same dimensions as the image
+     * @param plane       the plane of the page to fill, {@link RasterPage#BLACK} or {@link RasterPage#RED}
+     * @param executor    the executor running the workers, or null to dither on the calling thread only
+     * @param parallelism the maximum number of rows processed at the same time, including the calling thread
+     * @throws IllegalArgumentException if the palette does not contain exactly 2 colors
+     */
+    public static void floydSteinbergDithering(BufferedImage img, ARGB[] palette, RasterPage page, int plane,
+                                               Executor executor, int parallelism) {
+        floydSteinbergDithering(new PixelReader(img), img.getWidth(), img.getHeight(), palette, page, plane,
+                executor, parallelism);
+    }
 
-                if (x - 1 >= 0 && y + 1 < h) {
-                    d[y + 1][x - 1] = d[y + 1][x - 1].add(err.mul(3. / 16));
-                }
+    /**
+     * Convert the sRGB image to a 2-color palette in a single pass : the alpha channel is blended to a white
+     * background, the brightness is applied, then the Floyd-Steinberg dithering algorithm is applied.
+     * No intermediate image is created. Gives the same result as {@link #removeAlpha(BufferedImage)}
+     * followed by {@link #brightness(BufferedImage, float)} and
+     * {@link #floydSteinbergDithering(BufferedImage, ARGB[], RasterPage, int)}.
+     *
+     * @param img        the image to dither
+     * @param brightness the brightness factor, a positive float.
+     * @param palette    the 2-color palette to use
+     * @param page       the raster page receiving the dithered pixels, with the same dimensions as the image
+     * @param plane      the plane of the page to fill, {@link RasterPage#BLACK} or {@link RasterPage#RED}
+     * @throws IllegalArgumentException if the palette does not contain exactly 2 colors
+     */
+    public static void floydSteinbergDithering(BufferedImage img, float brightness, ARGB[] palette,
+                                               RasterPage page, int plane) {
+        floydSteinbergDithering(img, brightness, palette, page, plane, null, 1);
+    }
 
-                if (y + 1 < h) {
-                    d[y + 1][x] = d[y + 1][x].add(err.mul(5. / 16));
-                }
+    /**
+     * Convert the sRGB image to a 2-color palette in a single pass, with the rows processed in parallel
+     * as a wavefront. The result is identical to the one of
+     * {@link #floydSteinbergDithering(BufferedImage, float, ARGB[], RasterPage, int)}.
+     *
+     * @param img         the image to dither
+     * @param brightness  the brightness factor, a positive float.
+     * @param palette     the 2-color palette to use
+     * @param page        the raster page receiving the dithered pixels, with the same dimensions as the image
+     * @param plane       the plane of the page to fill, {@link RasterPage#BLACK} or {@link RasterPage#RED}
+     * @param executor    the executor running the workers, or null to dither on the calling thread only
+     * @param parallelism the maximum number of rows processed at the same time, including the calling thread
+     * @throws IllegalArgumentException if the palette does not contain exactly 2 colors
+     */
+    public static void floydSteinbergDithering(BufferedImage img, float brightness, ARGB[] palette,
+                                               RasterPage page, int plane, Executor executor, int parallelism) {
+        floydSteinbergDithering(new PixelReader(img, true, brightness), img.getWidth(), img.getHeight(),
+                palette, page, plane, executor, parallelism);
+    }
 
-                if (x + 1 < w && y + 1 < h) {
-                    d[y + 1][x + 1] = d[y + 1][x + 1].add(err.mul(1. / 16));
-                }
-            }
-        }
+    /**
+     * Convert the sRGB image to a 2-color palette using ordered dithering with an 8x8 Bayer matrix,
+     * and store the result in a plane of the given raster page.
+     * The first color of the palette is the printed color (e.g. black or red), the second one is the
+     * background color (white). Pixels converted to the first color are set in the plane.
+     *
+     * @param img     the image to dither
+     * @param palette the 2-color palette to use
+     * @param page    the raster page receiving the dithered pixels, with the same dimensions as the image
+     * @param plane   the plane of the page to fill, {@link RasterPage#BLACK} or {@link RasterPage#RED}
+     * @throws IllegalArgumentException if the palette does not contain exactly 2 colors
+     */
+    public static void orderedDithering(BufferedImage img, ARGB[] palette, RasterPage page, int plane) {
+        orderedDithering(new PixelReader(img), img.getWidth(), img.getHeight(), palette, page, plane);
+    }
 
-        return dithered;
+    /**
+     * Convert the sRGB image to a 2-color palette in a single pass : the alpha channel is blended to a white
+     * background, the brightness is applied, then ordered dithering is applied.
+     * No intermediate image is created.
+     *
+     * @param img        the image to dither
+     * @param brightness the brightness factor, a positive float.
+     * @param palette    the 2-color palette to use
+     * @param page       the raster page receiving the dithered pixels, with the same dimensions as the image
+     * @param plane      the plane of the page to fill, {@link RasterPage#BLACK} or {@link RasterPage#RED}
+     * @throws IllegalArgumentException if the palette does not contain exactly 2 colors
+     */
+    public static void orderedDithering(BufferedImage img, float brightness, ARGB[] palette,
+                                        RasterPage page, int plane) {
+        orderedDithering(new PixelReader(img, true, brightness), img.getWidth(), img.getHeight(),
+                palette, page, plane);
     }
 
     /**
@@ -224,17 +310,139 @@ public class Converter {
      * @return the converted image
      */
     public static BufferedImage threshold(BufferedImage img, float threshold, Color low, Color high) {
-        int w = img.getWidth();
-        int h = img.getHeight();
-        BufferedImage converted = new BufferedImage(w, h, img.getType());
+        RasterPage page = new RasterPage(img.getWidth(), img.getHeight(), false);
+        threshold(img, threshold, page, RasterPage.BLACK);
+        return toImage(page, img.getType(), low.getRGB(), high.getRGB());
+    }
 
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                float lum = luminance(img.getRGB(x, y)) / 255.0f;
-                converted.setRGB(x, y, lum < threshold ? low.getRGB() : high.getRGB());
-            }
-        }
-        return converted;
+    /**
+     * Convert the sRGB image using a luminance threshold, and store the result in a plane of the given raster page.
+     * Pixels with a luminance below the threshold are set in the plane.
+     *
+     * @param img       the image to convert
+     * @param threshold the threshold value (between 0 and 1) to discriminate between printed and blank pixels.
+     * @param page      the raster page receiving the converted pixels, with the same dimensions as the image
+     * @param plane     the plane of the page to fill, {@link RasterPage#BLACK} or {@link RasterPage#RED}
+     */
+    public static void threshold(BufferedImage img, float threshold, RasterPage page, int plane) {
+        threshold(new PixelReader(img), img.getWidth(), img.getHeight(), threshold, page, plane);
+    }
+
+    /**
+     * Convert the sRGB image in a single pass : the alpha channel is blended to a white background,
+     * the brightness is applied, then the luminance threshold is applied.
+     * No intermediate image is created. Gives the same result as {@link #removeAlpha(BufferedImage)}
+     * followed by {@link #brightness(BufferedImage, float)} and
+     * {@link #threshold(BufferedImage, float, RasterPage, int)}.
+     *
+     * @param img        the image to convert
+     * @param brightness the brightness factor, a positive float.
+     * @param threshold  the threshold value (between 0 and 1) to discriminate between printed and blank pixels.
+     * @param page       the raster page receiving the converted pixels, with the same dimensions as the image
+     * @param plane      the plane of the page to fill, {@link RasterPage#BLACK} or {@link RasterPage#RED}
+     */
+    public static void threshold(BufferedImage img, float brightness, float threshold, RasterPage page, int plane) {
+        threshold(new PixelReader(img, true, brightness), img.getWidth(), img.getHeight(), threshold, page, plane);
+    }
+
+    /**
+     * Tells whether a color is printed in red on two-color media : its red component is 255 and its
+     * green and blue components are close to each other.
+     *
+     * @param rgb the color (sRGB)
+     * @return true if the color belongs to the red layer
+     */
+    public static boolean isRed(int rgb) {
+        return (rgb >> 16 & 0xFF) == 255 && Math.abs((rgb >> 8 & 0xFF) - (rgb & 0xFF)) < 10;
+    }
+
+    /**
+     * Convert the sRGB image to red, black and white for two-color media, using the Floyd-Steinberg dithering
+     * algorithm, and store the result in the red and black planes of the given raster page.
+     * The image is read once : the red pixels (see {@link #isRed(int)}) are dithered with
+     * {@link #PALETTE_RED_WHITE} in the red plane, the other pixels with {@link #PALETTE_BLACK_WHITE}
+     * in the black plane, each with its own error diffusion, then the layers are merged.
+     * No intermediate image is created. Gives the same result as {@link #extractLayer(BufferedImage, Predicate)}
+     * followed by the dithering of each layer and {@link RasterPage#mergeLayers()}.
+     *
+     * @param img         the image to dither
+     * @param page        the two-color raster page receiving the dithered pixels, with the same dimensions
+     *                    as the image
+     * @param executor    the executor running the workers, or null to dither on the calling thread only
+     * @param parallelism the maximum number of rows processed at the same time, including the calling thread
+     */
+    public static void twoColorDithering(BufferedImage img, RasterPage page, Executor executor, int parallelism) {
+        twoColorDithering(new PixelReader(img), img.getWidth(), img.getHeight(), page, executor, parallelism);
+    }
+
+    /**
+     * Same as {@link #twoColorDithering(BufferedImage, RasterPage, Executor, int)}, with the alpha channel
+     * blended to a white background and the brightness applied first, in the same single pass.
+     *
+     * @param img         the image to dither
+     * @param brightness  the brightness factor, a positive float.
+     * @param page        the two-color raster page receiving the dithered pixels, with the same dimensions
+     *                    as the image
+     * @param executor    the executor running the workers, or null to dither on the calling thread only
+     * @param parallelism the maximum number of rows processed at the same time, including the calling thread
+     */
+    public static void twoColorDithering(BufferedImage img, float brightness, RasterPage page,
+                                         Executor executor, int parallelism) {
+        twoColorDithering(new PixelReader(img, true, brightness), img.getWidth(), img.getHeight(), page,
+                executor, parallelism);
+    }
+
+    /**
+     * Convert the sRGB image to red, black and white for two-color media, using ordered dithering, and store
+     * the result in the red and black planes of the given raster page. The image is read once and no
+     * intermediate image is created (see {@link #twoColorDithering(BufferedImage, RasterPage, Executor, int)}).
+     *
+     * @param img  the image to dither
+     * @param page the two-color raster page receiving the dithered pixels, with the same dimensions as the image
+     */
+    public static void twoColorOrderedDithering(BufferedImage img, RasterPage page) {
+        twoColorOrderedDithering(new PixelReader(img), img.getWidth(), img.getHeight(), page);
+    }
+
+    /**
+     * Same as {@link #twoColorOrderedDithering(BufferedImage, RasterPage)}, with the alpha channel
+     * blended to a white background and the brightness applied first, in the same single pass.
+     *
+     * @param img        the image to dither
+     * @param brightness the brightness factor, a positive float.
+     * @param page       the two-color raster page receiving the dithered pixels, with the same dimensions
+     *                   as the image
+     */
+    public static void twoColorOrderedDithering(BufferedImage img, float brightness, RasterPage page) {
+        twoColorOrderedDithering(new PixelReader(img, true, brightness), img.getWidth(), img.getHeight(), page);
+    }
+
+    /**
+     * Convert the sRGB image to red, black and white for two-color media, using a luminance threshold on each
+     * layer, and store the result in the red and black planes of the given raster page. The image is read once
+     * and no intermediate image is created (see {@link #twoColorDithering(BufferedImage, RasterPage, Executor, int)}).
+     *
+     * @param img       the image to convert
+     * @param threshold the threshold value (between 0 and 1) to discriminate between printed and blank pixels.
+     * @param page      the two-color raster page receiving the converted pixels, with the same dimensions
+     *                  as the image
+     */
+    public static void twoColorThreshold(BufferedImage img, float threshold, RasterPage page) {
+        twoColorThreshold(new PixelReader(img), img.getWidth(), img.getHeight(), threshold, page);
+    }
+
+    /**
+     * Same as {@link #twoColorThreshold(BufferedImage, float, RasterPage)}, with the alpha channel
+     * blended to a white background and the brightness applied first, in the same single pass.
+     *
+     * @param img        the image to convert
+     * @param brightness the brightness factor, a positive float.
+     * @param threshold  the threshold value (between 0 and 1) to discriminate between printed and blank pixels.
+     * @param page       the two-color raster page receiving the converted pixels, with the same dimensions
+     *                   as the image
+     */
+    public static void twoColorThreshold(BufferedImage img, float brightness, float threshold, RasterPage page) {
+        twoColorThreshold(new PixelReader(img, true, brightness), img.getWidth(), img.getHeight(), threshold, page);
     }
 
     /**
@@ -403,16 +611,54 @@ public class Converter {
 
         for (int y = 0; y < h; y++) {
             for (int x = 0; x < w; x++) {
-                ARGB argb = new ARGB(image.getRGB(x, y));
-                argb.r = Math.min(255, (int) (argb.r * brightness));
-                argb.g = Math.min(255, (int) (argb.g * brightness));
-                argb.b = Math.min(255, (int) (argb.b * brightness));
-                newImage.setRGB(x, y, argb.toRGB());
+                newImage.setRGB(x, y, brightness(image.getRGB(x, y), brightness));
             }
         }
         return newImage;
     }
 
+    /**
+     * Remove the alpha channel of an image by blending it to a white background, and apply a brightness,
+     * in a single pass. Gives the same result as {@link #removeAlpha(BufferedImage)} followed by
+     * {@link #brightness(BufferedImage, float)}. Each step is skipped when it has no effect,
+     * and the image itself is returned when no step is needed.
+     *
+     * @param image      the image
+     * @param brightness the brightness factor, a positive float.
+     * @return the new image, or the given image if it has no alpha and brightness is 1.0
+     */
+    public static BufferedImage preprocess(BufferedImage image, float brightness) {
+        if (!image.getColorModel().hasAlpha() && brightness == 1.0f) {
+            return image;
+        }
+
+        int w = image.getWidth();
+        int h = image.getHeight();
+        BufferedImage newImage = new BufferedImage(w, h, image.getType());
+        PixelReader reader = new PixelReader(image, true, brightness);
+        int[] row = new int[w];
+
+        for (int y = 0; y < h; y++) {
+            reader.readRow(y, row);
+            newImage.setRGB(0, y, w, 1, row, 0, w);
+        }
+        return newImage;
+    }
+
+    /**
+     * Apply a brigthness on the given pixel.
+     *
+     * @param argb       the color
+     * @param brightness the brightness factor, a positive float.
+     * @return the new color
+     */
+    public static int brightness(int argb, float brightness) {
+        int r = Math.min(255, (int) ((argb >> 16 & 0xFF) * brightness));
+        int g = Math.min(255, (int) ((argb >> 8 & 0xFF) * brightness));
+        int b = Math.min(255, (int) ((argb & 0xFF) * brightness));
+        return argb & 0xFF000000 | r << 16 | g << 8 | b;
+    }
+
     /**
      * Remove the alpha channel of a pixel by blending it to a white background.
      *
@@ -420,13 +666,209 @@ public class Converter {
      * @return the color without alpha
      */
     public static int rgba2rgb(int rgba) {
-        ARGB argb = new ARGB(rgba);
-        float alpha = argb.a / 255.0f;
-        int blend = 255 - argb.a;
-        argb.r = (int) (blend + alpha * argb.r);
-        argb.g = (int) (blend + alpha * argb.g);
-        argb.b = (int) (blend + alpha * argb.b);
-        return argb.toRGB();
+        int a = rgba >>> 24;
+        if (a == 255) {
+            return rgba;
+        }
+        float alpha = a / 255.0f;
+        int blend = 255 - a;
+        int r = (int) (blend + alpha * (rgba >> 16 & 0xFF));
+        int g = (int) (blend + alpha * (rgba >> 8 & 0xFF));
+        int b = (int) (blend + alpha * (rgba & 0xFF));
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+
+    private static void floydSteinbergDithering(PixelReader reader, int w, int h, ARGB[] palette,
+                                                RasterPage page, int plane, Executor executor, int parallelism) {
+        FloydSteinbergDitherer ditherer = new FloydSteinbergDitherer(w, palette);
+        if (executor != null && parallelism > 1 && h > 1) {
+            ditherer.ditherParallel(reader, h, page, plane, executor, parallelism);
+            return;
+        }
+
+        int[] row = new int[w];
+
+        for (int y = 0; y < h; y++) {
+            reader.readRow(y, row);
+            ditherer.ditherRow(row, page, plane, y);
+        }
+    }
+
+    private static void orderedDithering(PixelReader reader, int w, int h, ARGB[] palette,
+                                         RasterPage page, int plane) {
+        OrderedDitherer ditherer = new OrderedDitherer(palette);
+        int[] row = new int[w];
+
+        for (int y = 0; y < h; y++) {
+            reader.readRow(y, row);
+            ditherer.ditherRow(row, w, page, plane, y);
+        }
+    }
+
+    private static void twoColorDithering(PixelReader reader, int w, int h, RasterPage page,
+                                          Executor executor, int parallelism) {
+        FloydSteinbergDitherer redDitherer = new FloydSteinbergDitherer(w, PALETTE_RED_WHITE);
+        FloydSteinbergDitherer blackDitherer = new FloydSteinbergDitherer(w, PALETTE_BLACK_WHITE);
+
+        if (executor != null && parallelism > 1 && h > 1) {
+            // Each layer in turn, with its rows processed in parallel
+            redDitherer.ditherParallel(layer(reader, w, true), h, page, RasterPage.RED, executor, parallelism);
+            blackDitherer.ditherParallel(layer(reader, w, false), h, page, RasterPage.BLACK, executor, parallelism);
+
+        } else {
+            int[] row = new int[w];
+            int[] red = new int[w];
+            int[] black = new int[w];
+            for (int y = 0; y < h; y++) {
+                reader.readRow(y, row);
+                splitColors(row, w, red, black);
+                redDitherer.ditherRow(red, page, RasterPage.RED, y);
+                blackDitherer.ditherRow(black, page, RasterPage.BLACK, y);
+            }
+        }
+        page.mergeLayers();
+    }
+
+    private static void twoColorOrderedDithering(PixelReader reader, int w, int h, RasterPage page) {
+        OrderedDitherer redDitherer = new OrderedDitherer(PALETTE_RED_WHITE);
+        OrderedDitherer blackDitherer = new OrderedDitherer(PALETTE_BLACK_WHITE);
+        int[] row = new int[w];
+        int[] red = new int[w];
+        int[] black = new int[w];
+
+        for (int y = 0; y < h; y++) {
+            reader.readRow(y, row);
+            splitColors(row, w, red, black);
+            redDitherer.ditherRow(red, w, page, RasterPage.RED, y);
+            blackDitherer.ditherRow(black, w, page, RasterPage.BLACK, y);
+        }
+        page.mergeLayers();
+    }
+
+    private static void twoColorThreshold(PixelReader reader, int w, int h, float threshold, RasterPage page) {
+        int cut = luminanceCut(threshold);
+        int[] row = new int[w];
+        int[] red = new int[w];
+        int[] black = new int[w];
+
+        for (int y = 0; y < h; y++) {
+            reader.readRow(y, row);
+            splitColors(row, w, red, black);
+            ThresholdKernel.thresholdRgb(red, w, cut, page, RasterPage.RED, y);
+            ThresholdKernel.thresholdRgb(black, w, cut, page, RasterPage.BLACK, y);
+        }
+        page.mergeLayers();
+    }
+
+    /**
+     * Render the black plane of a page to an image, using the given colors for the set and unset pixels.
+     */
+    private static BufferedImage toImage(RasterPage page, int type, int set, int unset) {
+        int w = page.getWidth();
+        int h = page.getHeight();
+        BufferedImage image = new BufferedImage(w, h, type);
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                row[x] = page.isSet(RasterPage.BLACK, x, y) ? set : unset;
+            }
+            image.setRGB(0, y, w, 1, row, 0, w);
+        }
+        return image;
+    }
+
+    /**
+     * Split a row into its red layer and its black layer, the pixels of the other layer being white.
+     */
+    private static void splitColors(int[] rgb, int w, int[] red, int[] black) {
+        for (int x = 0; x < w; x++) {
+            int c = rgb[x];
+            if (isRed(c)) {
+                red[x] = c;
+                black[x] = WHITE;
+            } else {
+                red[x] = WHITE;
+                black[x] = c;
+            }
+        }
+    }
+
+    /**
+     * Get the rows of the red or black layer of the image, the pixels of the other layer being white.
+     */
+    private static RowSource layer(PixelReader reader, int w, boolean red) {
+        return (y, rgb) -> {
+            reader.readRow(y, rgb);
+            for (int x = 0; x < w; x++) {
+                if (isRed(rgb[x]) != red) {
+                    rgb[x] = WHITE;
+                }
+            }
+        };
+    }
+
+    private static void threshold(PixelReader reader, int w, int h, float threshold, RasterPage page, int plane) {
+        int cut = luminanceCut(threshold);
+        int[] row = new int[w];
+
+        for (int y = 0; y < h; y++) {
+            if (reader.hasLuminanceTable()) {
+                reader.readLuminance(y, row);
+                ThresholdKernel.thresholdLuminance(row, w, cut, page, plane, y);
+            } else {
+                reader.readRow(y, row);
+                ThresholdKernel.thresholdRgb(row, w, cut, page, plane, y);
+            }
+        }
+    }
+
+    /**
+     * Compute the lowest luminance that is not below the given threshold, so that the pixels to print
+     * are found by comparing integers, with the same result as {@code luminance / 255.0f < threshold}.
+     */
+    static int luminanceCut(float threshold) {
+        int cut = 0;
+        while (cut <= 255 && cut / 255.0f < threshold) {
+            cut++;
+        }
+        return cut;
+    }
+
+    private static BufferedImage floydSteinbergDitheringGeneric(BufferedImage img, ARGB[] palette) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        BufferedImage dithered = new BufferedImage(w, h, img.getType());
+
+        ARGB[][] d = toARGB(img);
+
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+
+                ARGB oldColor = d[y][x];
+                ARGB newColor = findClosestPaletteColor(oldColor, palette);
+                dithered.setRGB(x, y, newColor.toColor().getRGB());
+
+                ARGB err = oldColor.sub(newColor);
+
+                if (x + 1 < w) {
+                    d[y][x + 1] = d[y][x + 1].add(err.mul(7. / 16));
+                }
+
+                if (x - 1 >= 0 && y + 1 < h) {
+                    d[y + 1][x - 1] = d[y + 1][x - 1].add(err.mul(3. / 16));
+                }
+
+                if (y + 1 < h) {
+                    d[y + 1][x] = d[y + 1][x].add(err.mul(5. / 16));
+                }
+
+                if (x + 1 < w && y + 1 < h) {
+                    d[y + 1][x + 1] = d[y + 1][x + 1].add(err.mul(1. / 16));
+                }
+            }
+        }
+
+        return dithered;
     }
 
     private static ARGB[][] toARGB(BufferedImage img) {
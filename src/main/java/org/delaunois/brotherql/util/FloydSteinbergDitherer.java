@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2024 Cédric de Launois
+ * See LICENSE for licensing information.
+ *
+ * Java USB Driver for printing with Brother QL printers.
+ */
+package org.delaunois.brotherql.util;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Floyd-Steinberg dithering engine for 2-color palettes, working row by row.
+ * <p>
+ * The engine keeps the accumulated error of the current and of the next row in two rolling int arrays
+ * (3 components per pixel), and does not allocate anything once constructed. Errors are propagated in
+ * integer sixteenths, truncated toward zero, and the closest palette color is found in closed form.
+ * The result is identical to the one of the generic algorithm working on {@link Converter.ARGB} colors.
+ * <p>
+ * Note that on saturated colors the error of some components is never compensated and keeps growing along
+ * the image. The squared distances of the generic algorithm then overflow, which is reproduced here so that
+ * the output remains identical.
+ * <p>
+ * Rows can also be dithered in parallel, as a wavefront : pixel (x, y) only depends on pixels (x - 1, y) and
+ * (x - 1 .. x + 1, y - 1), so row y can progress as soon as row y - 1 is 2 pixels ahead. The result is
+ * identical to the sequential one.
+ *
+ * @author Cedric de Launois
+ */
+final class FloydSteinbergDitherer {
+
+    /**
+     * Bound of the components below which the squared distances to the palette colors cannot overflow,
+     * so that the closed form gives the same result as comparing the distances.
+     */
+    private static final int SAFE_COMPONENT = 26000;
+
+    /**
+     * Number of pixels processed between two publications of the progress of a row, in wavefront mode.
+     */
+    private static final int PROGRESS_STEP = 32;
+
+    private final int width;
+
+    // Components of the printed color (palette[0]) and of the background color (palette[1])
+    private final int inkR;
+    private final int inkG;
+    private final int inkB;
+    private final int paperR;
+    private final int paperG;
+    private final int paperB;
+
+    // The paper color is closer than the ink color iff 2 * (r * kr + g * kg + b * kb) > k
+    private final int kr;
+    private final int kg;
+    private final int kb;
+    private final int k;
+
+    private int[] current;
+    private int[] next;
+
+    /**
+     * Construct a ditherer for images of the given width.
+     *
+     * @param width   the image width
+     * @param palette the 2-color palette : the printed color first, then the background color
+     */
+    FloydSteinbergDitherer(int width, Converter.ARGB[] palette) {
+        if (palette.length != 2) {
+            throw new IllegalArgumentException("Palette must have exactly 2 colors");
+        }
+        Converter.ARGB ink = palette[0];
+        Converter.ARGB paper = palette[1];
+        this.width = width;
+        this.inkR = ink.r;
+        this.inkG = ink.g;
+        this.inkB = ink.b;
+        this.paperR = paper.r;
+        this.paperG = paper.g;
+        this.paperB = paper.b;
+        this.kr = paper.r - ink.r;
+        this.kg = paper.g - ink.g;
+        this.kb = paper.b - ink.b;
+        this.k = paper.r * paper.r - ink.r * ink.r
+                + paper.g * paper.g - ink.g * ink.g
+                + paper.b * paper.b - ink.b * ink.b;
+        this.current = new int[width * 3];
+        this.next = new int[width * 3];
+    }
+
+    /**
+     * Dither the next row of the image. Rows must be given in order, starting at row 0.
+     *
+     * @param rgb   the row pixels, as RGB-encoded integers (alpha is ignored)
+     * @param page  the raster page receiving the printed pixels
+     * @param plane the plane of the page to fill
+     * @param y     the row index in the page
+     */
+    void ditherRow(int[] rgb, RasterPage page, int plane, int y) {
+        int[] cur = current;
+        int[] nxt = next;
+        int last = width - 1;
+
+        for (int x = 0, i = 0; x < width; x++, i += 3) {
+            int c = rgb[x];
+            int r = (c >> 16 & 0xFF) + cur[i];
+            int g = (c >> 8 & 0xFF) + cur[i + 1];
+            int b = (c & 0xFF) + cur[i + 2];
+
+            int er;
+            int eg;
+            int eb;
+            if (isPaperCloser(r, g, b)) {
+                er = r - paperR;
+                eg = g - paperG;
+                eb = b - paperB;
+            } else {
+                page.set(plane, x, y);
+                er = r - inkR;
+                eg = g - inkG;
+                eb = b - inkB;
+            }
+
+            if (x < last) {
+                cur[i + 3] += er * 7 / 16;
+                cur[i + 4] += eg * 7 / 16;
+                cur[i + 5] += eb * 7 / 16;
+                nxt[i + 3] += er / 16;
+                nxt[i + 4] += eg / 16;
+                nxt[i + 5] += eb / 16;
+            }
+            if (x > 0) {
+                nxt[i - 3] += er * 3 / 16;
+                nxt[i - 2] += eg * 3 / 16;
+                nxt[i - 1] += eb * 3 / 16;
+            }
+            nxt[i] += er * 5 / 16;
+            nxt[i + 1] += eg * 5 / 16;
+            nxt[i + 2] += eb * 5 / 16;
+        }
+
+        // Roll the error rows
+        Arrays.fill(cur, 0);
+        current = nxt;
+        next = cur;
+    }
+
+    /**
+     * Dither a whole image, with rows processed in parallel as a wavefront.
+     * The workers take the rows in order, and each row waits for the row above to be far enough ahead.
+     * The result is identical to the one of {@link #ditherRow(int[], RasterPage, int, int)} called on each row.
+     * This ditherer must not be used for anything else meanwhile.
+     *
+     * @param source      the source of the image rows
+     * @param height      the image height
+     * @param page        the raster page receiving the printed pixels
+     * @param plane       the plane of the page to fill
+     * @param executor    the executor running the workers
+     * @param parallelism the maximum number of rows processed at the same time
+     */
+    void ditherParallel(RowSource source, int height, RasterPage page, int plane,
+                        Executor executor, int parallelism) {
+        int workers = Math.max(1, Math.min(parallelism, height));
+
+        // Row y reads its errors from slot y % slots, written by row y - 1 only.
+        // A slot is reused once the row that read it is done, which is awaited by its next writer.
+        int slots = workers + 1;
+        int[][] errors = new int[slots][width * 3];
+
+        // Number of pixels of each row processed so far, then done when the row has also cleared its slot
+        int done = width + 1;
+        AtomicIntegerArray progress = new AtomicIntegerArray(height);
+        AtomicInteger nextRow = new AtomicInteger();
+        Wavefront wavefront = new Wavefront(progress);
+
+        Parallel.run(executor, workers, () -> {
+            int[] rgb = new int[width];
+            int y;
+            while ((y = nextRow.getAndIncrement()) < height) {
+                try {
+                    if (y + 1 >= slots) {
+                        wavefront.await(y + 1 - slots, done);
+                    }
+                    source.readRow(y, rgb);
+                    ditherRow(rgb, errors[y % slots], errors[(y + 1) % slots], page, plane, y, wavefront);
+                    Arrays.fill(errors[y % slots], 0);
+                    progress.setRelease(y, done);
+                } catch (RuntimeException | Error e) {
+                    nextRow.set(height);
+                    wavefront.abort();
+                    throw e;
+                }
+            }
+        });
+    }
+
+    private void ditherRow(int[] rgb, int[] cur, int[] nxt, RasterPage page, int plane, int y, Wavefront wavefront) {
+        int last = width - 1;
+        int ready = y == 0 ? width : 0;
+        // Error carried to the next pixel of the row
+        int cr = 0;
+        int cg = 0;
+        int cb = 0;
+
+        for (int x = 0, i = 0; x < width; x++, i += 3) {
+            if (ready < x + 2 && ready < width) {
+                // Wait for pixel x + 1 of the row above, the last one contributing to pixel x
+                ready = wavefront.await(y - 1, Math.min(x + 2, width));
+            }
+
+            int c = rgb[x];
+            int r = (c >> 16 & 0xFF) + cur[i] + cr;
+            int g = (c >> 8 & 0xFF) + cur[i + 1] + cg;
+            int b = (c & 0xFF) + cur[i + 2] + cb;
+
+            int er;
+            int eg;
+            int eb;
+            if (isPaperCloser(r, g, b)) {
+                er = r - paperR;
+                eg = g - paperG;
+                eb = b - paperB;
+            } else {
+                page.set(plane, x, y);
+                er = r - inkR;
+                eg = g - inkG;
+                eb = b - inkB;
+            }
+
+            if (x < last) {
+                cr = er * 7 / 16;
+                cg = eg * 7 / 16;
+                cb = eb * 7 / 16;
+                nxt[i + 3] += er / 16;
+                nxt[i + 4] += eg / 16;
+                nxt[i + 5] += eb / 16;
+            }
+            if (x > 0) {
+                nxt[i - 3] += er * 3 / 16;
+                nxt[i - 2] += eg * 3 / 16;
+                nxt[i - 1] += eb * 3 / 16;
+            }
+            nxt[i] += er * 5 / 16;
+            nxt[i + 1] += eg * 5 / 16;
+            nxt[i + 2] += eb * 5 / 16;
+
+            if (x % PROGRESS_STEP == PROGRESS_STEP - 1) {
+                wavefront.publish(y, x + 1);
+            }
+        }
+        wavefront.publish(y, width);
+    }
+
+    private boolean isPaperCloser(int r, int g, int b) {
+        if (r <= SAFE_COMPONENT && r >= -SAFE_COMPONENT
+                && g <= SAFE_COMPONENT && g >= -SAFE_COMPONENT
+                && b <= SAFE_COMPONENT && b >= -SAFE_COMPONENT) {
+            return 2 * (r * kr + g * kg + b * kb) > k;
+        }
+        return distance(r, g, b, paperR, paperG, paperB) < distance(r, g, b, inkR, inkG, inkB);
+    }
+
+    private static int distance(int r, int g, int b, int pr, int pg, int pb) {
+        // Same int arithmetic as Converter.ARGB.diff, including overflows
+        int rdiff = pr - r;
+        int gdiff = pg - g;
+        int bdiff = pb - b;
+        return rdiff * rdiff + gdiff * gdiff + bdiff * bdiff;
+    }
+
+    /**
+     * Progress of the rows being dithered in parallel.
+     */
+    private static final class Wavefront {
+
+        private final AtomicIntegerArray progress;
+        private volatile boolean aborted;
+
+        private Wavefront(AtomicIntegerArray progress) {
+            this.progress = progress;
+        }
+
+        private void publish(int y, int pixels) {
+            progress.setRelease(y, pixels);
+        }
+
+        private int await(int y, int pixels) {
+            int spins = 0;
+            int value;
+            while ((value = progress.getAcquire(y)) < pixels) {
+                if (aborted) {
+                    // Another row failed : let this one end, the failure is reported by its worker
+                    return Integer.MAX_VALUE;
+                }
+                if (++spins % 128 == 0) {
+                    Thread.yield();
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+            return value;
+        }
+
+        private void abort() {
+            aborted = true;
+        }
+
+    }
+
+}
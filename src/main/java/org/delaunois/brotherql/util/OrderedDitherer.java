@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2024 Cédric de Launois
+ * See LICENSE for licensing information.
+ *
+ * Java USB Driver for printing with Brother QL printers.
+ */
+package org.delaunois.brotherql.util;
+
+/**
+ * Ordered dithering engine for 2-color palettes, using an 8x8 Bayer threshold matrix.
+ * <p>
+ * Each pixel is projected on the segment going from the printed color to the background color,
+ * and is printed when its position on that segment is below the threshold of the matrix at the pixel
+ * coordinates. With a constant threshold of 1/2, this is the closest palette color, as used by
+ * {@link FloydSteinbergDitherer}. Pixels do not depend on each other, so that any row or region
+ * can be dithered independently.
+ *
+ * @author Cedric de Launois
+ */
+final class OrderedDitherer {
+
+    private static final int[][] BAYER_8 = {
+            {0, 32, 8, 40, 2, 34, 10, 42},
+            {48, 16, 56, 24, 50, 18, 58, 26},
+            {12, 44, 4, 36, 14, 46, 6, 38},
+            {60, 28, 52, 20, 62, 30, 54, 22},
+            {3, 35, 11, 43, 1, 33, 9, 41},
+            {51, 19, 59, 27, 49, 17, 57, 25},
+            {15, 47, 7, 39, 13, 45, 5, 37},
+            {63, 31, 55, 23, 61, 29, 53, 21}
+    };
+
+    // Direction from the printed color (palette[0]) to the background color (palette[1])
+    private final int kr;
+    private final int kg;
+    private final int kb;
+    private final int inkDot;
+
+    // The pixel is printed iff 128 * ((c - ink) . k) <= (2 * m + 1) * |k|^2, m being the matrix value
+    private final int[][] thresholds = new int[8][8];
+
+    /**
+     * Construct an ordered ditherer.
+     *
+     * @param palette the 2-color palette : the printed color first, then the background color
+     */
+    OrderedDitherer(Converter.ARGB[] palette) {
+        if (palette.length != 2) {
+            throw new IllegalArgumentException("Palette must have exactly 2 colors");
+        }
+        Converter.ARGB ink = palette[0];
+        Converter.ARGB paper = palette[1];
+        this.kr = paper.r - ink.r;
+        this.kg = paper.g - ink.g;
+        this.kb = paper.b - ink.b;
+        this.inkDot = ink.r * kr + ink.g * kg + ink.b * kb;
+
+        int norm = kr * kr + kg * kg + kb * kb;
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                thresholds[y][x] = (2 * BAYER_8[y][x] + 1) * norm;
+            }
+        }
+    }
+
+    /**
+     * Dither a row of the image.
+     *
+     * @param rgb   the row pixels, as RGB-encoded integers (alpha is ignored)
+     * @param width the number of pixels in the row
+     * @param page  the raster page receiving the printed pixels
+     * @param plane the plane of the page to fill
+     * @param y     the row index in the page
+     */
+    void ditherRow(int[] rgb, int width, RasterPage page, int plane, int y) {
+        int[] rowThresholds = thresholds[y & 7];
+        for (int x = 0; x < width; x++) {
+            int c = rgb[x];
+            int dot = (c >> 16 & 0xFF) * kr + (c >> 8 & 0xFF) * kg + (c & 0xFF) * kb - inkDot;
+            if (128 * dot <= rowThresholds[x & 7]) {
+                page.set(plane, x, y);
+            }
+        }
+    }
+
+}
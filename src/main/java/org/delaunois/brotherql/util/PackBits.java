@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2024 Cédric de Launois
+ * See LICENSE for licensing information.
+ *
+ * Java USB Driver for printing with Brother QL printers.
+ */
+package org.delaunois.brotherql.util;
+
+/**
+ * PackBits run-length encoding, as used by the TIFF compression mode of the printers.
+ * <p>
+ * The data is encoded as a sequence of packets, each starting with a header byte <code>n</code> :
+ * <ul>
+ *     <li>0 to 127 : the next <code>n + 1</code> bytes are copied as is;</li>
+ *     <li>-127 to -1 : the next byte is repeated <code>1 - n</code> times.</li>
+ * </ul>
+ *
+ * @author Cedric de Launois
+ */
+public final class PackBits {
+
+    private static final int MAX_PACKET = 128;
+
+    private PackBits() {
+        // Prevent instanciation
+    }
+
+    /**
+     * Get the maximum length of the encoded data.
+     *
+     * @param length the length of the data to encode
+     * @return the maximum length of the encoded data
+     */
+    public static int maxEncodedLength(int length) {
+        return length + (length + MAX_PACKET - 1) / MAX_PACKET;
+    }
+
+    /**
+     * Encode the given data.
+     *
+     * @param src       the data to encode
+     * @param srcOffset the offset of the data
+     * @param length    the length of the data
+     * @param dst       the array receiving the encoded data, with at least {@link #maxEncodedLength(int)} bytes
+     *                  available
+     * @param dstOffset the offset of the encoded data
+     * @return the length of the encoded data
+     */
+    public static int encode(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+        int end = srcOffset + length;
+        int i = srcOffset;
+        int o = dstOffset;
+
+        while (i < end) {
+            byte b = src[i];
+            int run = 1;
+            while (i + run < end && run < MAX_PACKET && src[i + run] == b) {
+                run++;
+            }
+
+            if (run > 1) {
+                dst[o++] = (byte) (1 - run);
+                dst[o++] = b;
+                i += run;
+
+            } else {
+                // Literal packet, up to the next run of 3 identical bytes
+                int start = i;
+                int count = 0;
+                while (i < end && count < MAX_PACKET
+                        && !(i + 2 < end && src[i] == src[i + 1] && src[i] == src[i + 2])) {
+                    i++;
+                    count++;
+                }
+                dst[o++] = (byte) (count - 1);
+                System.arraycopy(src, start, dst, o, count);
+                o += count;
+            }
+        }
+        return o - dstOffset;
+    }
+
+    /**
+     * Decode the given data.
+     *
+     * @param src       the encoded data
+     * @param srcOffset the offset of the encoded data
+     * @param length    the length of the encoded data
+     * @param dst       the array receiving the decoded data
+     * @param dstOffset the offset of the decoded data
+     * @return the length of the decoded data
+     * @throws IllegalArgumentException if the encoded data is truncated
+     */
+    public static int decode(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+        int end = srcOffset + length;
+        int i = srcOffset;
+        int o = dstOffset;
+
+        while (i < end) {
+            int n = src[i++];
+            if (n >= 0) {
+                if (i + n + 1 > end) {
+                    throw new IllegalArgumentException("Truncated PackBits data");
+                }
+                System.arraycopy(src, i, dst, o, n + 1);
+                i += n + 1;
+                o += n + 1;
+            } else if (n != -128) {
+                if (i >= end) {
+                    throw new IllegalArgumentException("Truncated PackBits data");
+                }
+                byte b = src[i++];
+                for (int k = 0; k < 1 - n; k++) {
+                    dst[o++] = b;
+                }
+            }
+        }
+        return o - dstOffset;
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2024 Cédric de Launois
+ * See LICENSE for licensing information.
+ *
+ * Java USB Driver for printing with Brother QL printers.
+ */
+package org.delaunois.brotherql.util;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the same worker on several threads and waits for all of them.
+ *
+ * @author Cedric de Launois
+ */
+public final class Parallel {
+
+    private Parallel() {
+        // Prevent instanciation
+    }
+
+    /**
+     * Run the given worker on the calling thread and on {@code workers - 1} tasks submitted to the executor,
+     * then wait until all of them have returned. The worker is expected to take its work from a shared
+     * queue or counter, so that the work is still done if the executor is slow to start the tasks.
+     * Once the worker of the calling thread has returned, only the tasks already started are awaited :
+     * the tasks not yet started do nothing. The executor may thus be busy, e.g. running the caller itself.
+     * The first exception thrown by a worker is rethrown, once all workers have returned.
+     *
+     * @param executor the executor running the additional workers
+     * @param workers  the total number of workers, including the calling thread
+     * @param worker   the worker
+     */
+    public static void run(Executor executor, int workers, Runnable worker) {
+        Tasks tasks = new Tasks(worker);
+        for (int w = 1; w < workers; w++) {
+            executor.execute(tasks::runTask);
+        }
+
+        try {
+            worker.run();
+        } catch (RuntimeException | Error e) {
+            tasks.fail(e);
+        }
+        tasks.await();
+    }
+
+    /**
+     * The workers submitted to the executor.
+     */
+    private static final class Tasks {
+
+        private final Runnable worker;
+        private int running;
+        private boolean closed;
+        private Throwable failure;
+
+        private Tasks(Runnable worker) {
+            this.worker = worker;
+        }
+
+        private void runTask() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                running++;
+            }
+            try {
+                worker.run();
+            } catch (RuntimeException | Error e) {
+                fail(e);
+            } finally {
+                synchronized (this) {
+                    running--;
+                    notifyAll();
+                }
+            }
+        }
+
+        private synchronized void fail(Throwable e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+
+        /**
+         * Prevent the tasks not started from running, and wait for the running ones.
+         */
+        private synchronized void await() {
+            closed = true;
+            boolean interrupted = false;
+            while (running > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // The running workers share the caller's data : they must still be awaited
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+        }
+
+    }
+
+}
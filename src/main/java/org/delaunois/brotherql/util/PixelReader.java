@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2024 Cédric de Launois
+ * See LICENSE for licensing information.
+ *
+ * Java USB Driver for printing with Brother QL printers.
+ */
+package org.delaunois.brotherql.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * Reads the pixels of an image row by row as sRGB integers, optionally blending the alpha channel
+ * to a white background and applying a brightness factor on the fly.
+ * <p>
+ * Each step is skipped when it has no effect : alpha blending when the color model has no alpha,
+ * and brightness when the factor is 1.0.
+ * <p>
+ * The pixels of the common image types (INT_RGB, INT_ARGB, 3BYTE_BGR, 4BYTE_ABGR and BYTE_GRAY) are read
+ * directly from the backing data buffer, without any color model conversion. Gray levels are converted
+ * through lookup tables computed once, which also give their luminance. Other image types are read
+ * through {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}.
+ *
+ * @author Cedric de Launois
+ */
+final class PixelReader implements RowSource {
+
+    private enum Layout {
+        INT_RGB, INT_ARGB, BYTE_BGR, BYTE_ABGR, BYTE_GRAY, GENERIC
+    }
+
+    private final BufferedImage image;
+    private final int width;
+    private final boolean blendAlpha;
+    private final boolean applyBrightness;
+    private final float brightness;
+
+    private final Layout layout;
+    private int[] intData;
+    private byte[] byteData;
+    private int dataOffset;
+    private int scanlineStride;
+    private int pixelStride;
+    private int[] bandOffsets;
+    private int[] grayRgb;
+    private int[] grayLuminance;
+
+    /**
+     * Construct a reader that returns the pixels as is.
+     *
+     * @param image the image to read
+     */
+    PixelReader(BufferedImage image) {
+        this(image, false, 1.0f);
+    }
+
+    /**
+     * Construct a reader applying the given preprocessing.
+     *
+     * @param image      the image to read
+     * @param blendAlpha whether to blend the alpha channel to a white background
+     * @param brightness the brightness factor
+     */
+    PixelReader(BufferedImage image, boolean blendAlpha, float brightness) {
+        this.image = image;
+        this.width = image.getWidth();
+        this.blendAlpha = blendAlpha && image.getColorModel().hasAlpha();
+        this.applyBrightness = brightness != 1.0f;
+        this.brightness = brightness;
+        this.layout = bind(image);
+    }
+
+    @Override
+    public void readRow(int y, int[] rgb) {
+        switch (layout) {
+            case INT_RGB:
+                readIntRgb(y, rgb);
+                break;
+            case INT_ARGB:
+                System.arraycopy(intData, dataOffset + y * scanlineStride, rgb, 0, width);
+                break;
+            case BYTE_BGR:
+                readByteBgr(y, rgb);
+                break;
+            case BYTE_ABGR:
+                readByteAbgr(y, rgb);
+                break;
+            case BYTE_GRAY:
+                // Alpha and brightness are already part of the lookup table
+                readByteGray(y, rgb, grayRgb);
+                return;
+            default:
+                image.getRGB(0, y, width, 1, rgb, 0, width);
+                break;
+        }
+
+        if (blendAlpha || applyBrightness) {
+            for (int x = 0; x < width; x++) {
+                int c = rgb[x];
+                if (blendAlpha) {
+                    c = Converter.rgba2rgb(c);
+                }
+                if (applyBrightness) {
+                    c = Converter.brightness(c, brightness);
+                }
+                rgb[x] = c;
+            }
+        }
+    }
+
+    /**
+     * Read the luminance of a row of pixels, as given by {@link Converter#luminance(int)}.
+     * For gray images, the luminance is read from a lookup table and is not computed.
+     *
+     * @param y   the row
+     * @param lum the array receiving the luminance of the pixels, at least as long as the image width
+     */
+    void readLuminance(int y, int[] lum) {
+        if (layout == Layout.BYTE_GRAY) {
+            readByteGray(y, lum, grayLuminance);
+            return;
+        }
+
+        readRow(y, lum);
+        for (int x = 0; x < width; x++) {
+            lum[x] = Converter.luminance(lum[x]);
+        }
+    }
+
+    /**
+     * Tells whether the luminance of the pixels is read from a lookup table rather than computed,
+     * which is the case for gray images.
+     *
+     * @return true if {@link #readLuminance(int, int[])} does not compute the luminance
+     */
+    boolean hasLuminanceTable() {
+        return layout == Layout.BYTE_GRAY;
+    }
+
+    private void readIntRgb(int y, int[] rgb) {
+        int[] data = intData;
+        for (int x = 0, i = dataOffset + y * scanlineStride; x < width; x++, i++) {
+            rgb[x] = 0xFF000000 | data[i];
+        }
+    }
+
+    private void readByteBgr(int y, int[] rgb) {
+        byte[] data = byteData;
+        int row = dataOffset + y * scanlineStride;
+        int ri = row + bandOffsets[0];
+        int gi = row + bandOffsets[1];
+        int bi = row + bandOffsets[2];
+        int step = pixelStride;
+        for (int x = 0; x < width; x++, ri += step, gi += step, bi += step) {
+            rgb[x] = 0xFF000000 | (data[ri] & 0xFF) << 16 | (data[gi] & 0xFF) << 8 | data[bi] & 0xFF;
+        }
+    }
+
+    private void readByteAbgr(int y, int[] rgb) {
+        byte[] data = byteData;
+        int row = dataOffset + y * scanlineStride;
+        int ri = row + bandOffsets[0];
+        int gi = row + bandOffsets[1];
+        int bi = row + bandOffsets[2];
+        int ai = row + bandOffsets[3];
+        int step = pixelStride;
+        for (int x = 0; x < width; x++, ri += step, gi += step, bi += step, ai += step) {
+            rgb[x] = data[ai] << 24 | (data[ri] & 0xFF) << 16 | (data[gi] & 0xFF) << 8 | data[bi] & 0xFF;
+        }
+    }
+
+    private void readByteGray(int y, int[] dest, int[] lut) {
+        byte[] data = byteData;
+        int step = pixelStride;
+        for (int x = 0, i = dataOffset + y * scanlineStride + bandOffsets[0]; x < width; x++, i += step) {
+            dest[x] = lut[data[i] & 0xFF];
+        }
+    }
+
+    private Layout bind(BufferedImage image) {
+        Raster raster = image.getRaster();
+        SampleModel sm = raster.getSampleModel();
+        DataBuffer db = raster.getDataBuffer();
+        if (db.getNumBanks() != 1) {
+            return Layout.GENERIC;
+        }
+        int tx = raster.getSampleModelTranslateX();
+        int ty = raster.getSampleModelTranslateY();
+
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+                if (!(sm instanceof SinglePixelPackedSampleModel) || !(db instanceof DataBufferInt)) {
+                    return Layout.GENERIC;
+                }
+                SinglePixelPackedSampleModel sppsm = (SinglePixelPackedSampleModel) sm;
+                intData = ((DataBufferInt) db).getData();
+                scanlineStride = sppsm.getScanlineStride();
+                dataOffset = db.getOffset() + sppsm.getOffset(-tx, -ty);
+                return image.getType() == BufferedImage.TYPE_INT_RGB ? Layout.INT_RGB : Layout.INT_ARGB;
+
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR:
+            case BufferedImage.TYPE_BYTE_GRAY:
+                if (!(sm instanceof ComponentSampleModel) || !(db instanceof DataBufferByte)) {
+                    return Layout.GENERIC;
+                }
+                ComponentSampleModel csm = (ComponentSampleModel) sm;
+                byteData = ((DataBufferByte) db).getData();
+                scanlineStride = csm.getScanlineStride();
+                pixelStride = csm.getPixelStride();
+                bandOffsets = csm.getBandOffsets();
+                dataOffset = db.getOffset() - ty * scanlineStride - tx * pixelStride;
+                if (image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+                    return Layout.BYTE_BGR;
+                }
+                if (image.getType() == BufferedImage.TYPE_4BYTE_ABGR) {
+                    return Layout.BYTE_ABGR;
+                }
+                buildGrayTables(image.getColorModel());
+                return Layout.BYTE_GRAY;
+
+            default:
+                return Layout.GENERIC;
+        }
+    }
+
+    private void buildGrayTables(ColorModel cm) {
+        grayRgb = new int[256];
+        grayLuminance = new int[256];
+        byte[] sample = new byte[1];
+        for (int v = 0; v < 256; v++) {
+            sample[0] = (byte) v;
+            int c = cm.getRGB(sample);
+            if (applyBrightness) {
+                c = Converter.brightness(c, brightness);
+            }
+            grayRgb[v] = c;
+            grayLuminance[v] = Converter.luminance(c);
+        }
+    }
+
+}
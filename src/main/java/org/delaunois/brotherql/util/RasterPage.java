@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2024 Cédric de Launois
+ * See LICENSE for licensing information.
+ *
+ * Java USB Driver for printing with Brother QL printers.
+ */
+package org.delaunois.brotherql.util;
+
+import lombok.Getter;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * A rastered label page, packed as one bit per dot.
+ * <p>
+ * Each raster line is stored in the printer order, with the media margins already applied : the right margin
+ * comes first, then the image pixels from right to left, then the left margin. Bits are stored most significant
+ * bit first, and a bit set to 1 means the dot is printed. A line can thus be sent as is to the printer.
+ * <p>
+ * A page holds one plane (black) for monochrome printing, or two planes (black and red) for two-color printing.
+ *
+ * @author Cedric de Launois
+ */
+public final class RasterPage {
+
+    /**
+     * Index of the black plane.
+     */
+    public static final int BLACK = 0;
+
+    /**
+     * Index of the red plane.
+     */
+    public static final int RED = 1;
+
+    /**
+     * The image width in pixels, margins excluded.
+     */
+    @Getter
+    private final int width;
+
+    /**
+     * The image height in pixels, i.e. the number of raster lines.
+     */
+    @Getter
+    private final int height;
+
+    /**
+     * The left margin in dots.
+     */
+    @Getter
+    private final int leftMarginPx;
+
+    /**
+     * The right margin in dots.
+     */
+    @Getter
+    private final int rightMarginPx;
+
+    /**
+     * The number of bytes of a raster line, margins included.
+     */
+    @Getter
+    private final int bytesPerLine;
+
+    private final byte[][] planes;
+    private final byte[] blankLine;
+
+    /**
+     * Construct an empty page without margins.
+     *
+     * @param width    the image width in pixels
+     * @param height   the image height in pixels
+     * @param twoColor whether the page holds a red plane in addition to the black plane
+     */
+    public RasterPage(int width, int height, boolean twoColor) {
+        this(width, height, 0, 0, twoColor);
+    }
+
+    /**
+     * Construct an empty page with the given margins.
+     *
+     * @param width         the image width in pixels
+     * @param height        the image height in pixels
+     * @param leftMarginPx  the left margin in dots
+     * @param rightMarginPx the right margin in dots
+     * @param twoColor      whether the page holds a red plane in addition to the black plane
+     */
+    public RasterPage(int width, int height, int leftMarginPx, int rightMarginPx, boolean twoColor) {
+        if (width < 0 || height < 0 || leftMarginPx < 0 || rightMarginPx < 0) {
+            throw new IllegalArgumentException("Page dimensions must be positive");
+        }
+        this.width = width;
+        this.height = height;
+        this.leftMarginPx = leftMarginPx;
+        this.rightMarginPx = rightMarginPx;
+        this.bytesPerLine = (rightMarginPx + width + leftMarginPx + 7) >> 3;
+        this.planes = new byte[twoColor ? 2 : 1][bytesPerLine * height];
+        this.blankLine = new byte[bytesPerLine];
+    }
+
+    /**
+     * Tells whether the page holds a red plane.
+     *
+     * @return true if the page is a two-color page
+     */
+    public boolean isTwoColor() {
+        return planes.length > RED;
+    }
+
+    /**
+     * Get the backing array of the given plane. Line <code>y</code> starts at {@link #getLineOffset(int)}
+     * and is <code>getBytesPerLine()</code> bytes long.
+     *
+     * @param plane the plane, {@link #BLACK} or {@link #RED}
+     * @return the backing array, or null if the page has no such plane
+     */
+    public byte[] getPlane(int plane) {
+        return plane < planes.length ? planes[plane] : null;
+    }
+
+    /**
+     * Get the offset of the given raster line in the plane arrays.
+     *
+     * @param y the raster line
+     * @return the offset
+     */
+    public int getLineOffset(int y) {
+        return y * bytesPerLine;
+    }
+
+    /**
+     * Mark the dot of the given pixel as printed.
+     *
+     * @param plane the plane, {@link #BLACK} or {@link #RED}
+     * @param x     the pixel column, in image coordinates
+     * @param y     the pixel row
+     */
+    public void set(int plane, int x, int y) {
+        int dot = rightMarginPx + width - 1 - x;
+        planes[plane][y * bytesPerLine + (dot >> 3)] |= (byte) (0x80 >>> (dot & 7));
+    }
+
+    /**
+     * Mark the dots of consecutive pixels of a row as printed, from a packed bit mask.
+     * Bit <code>i</code> of the mask (least significant first) stands for pixel <code>x + i</code>.
+     * Since pixels are stored from right to left, the mask is copied as is, whole bytes at a time.
+     *
+     * @param plane the plane, {@link #BLACK} or {@link #RED}
+     * @param x     the column of the first pixel, in image coordinates
+     * @param y     the pixel row
+     * @param bits  the mask of the printed pixels
+     * @param count the number of pixels covered by the mask, at most 57 : the mask is shifted by up to 7 bits
+     *              to align it on the byte of its first dot, and must still fit in a long
+     */
+    public void setBits(int plane, int x, int y, long bits, int count) {
+        assert count >= 0 && count <= 57 : "Mask of " + count + " pixels";
+        bits &= (1L << count) - 1;
+        // Dot of pixel x, the last one of the run in printing order
+        int dot = rightMarginPx + width - 1 - x;
+        byte[] data = planes[plane];
+        int i = y * bytesPerLine + (dot >> 3);
+        long v = bits << (7 - (dot & 7));
+        while (v != 0) {
+            data[i--] |= (byte) v;
+            v >>>= 8;
+        }
+    }
+
+    /**
+     * Tells whether the dot of the given pixel is printed.
+     *
+     * @param plane the plane, {@link #BLACK} or {@link #RED}
+     * @param x     the pixel column, in image coordinates
+     * @param y     the pixel row
+     * @return true if the dot is printed
+     */
+    public boolean isSet(int plane, int x, int y) {
+        if (plane >= planes.length) {
+            return false;
+        }
+        int dot = rightMarginPx + width - 1 - x;
+        return (planes[plane][y * bytesPerLine + (dot >> 3)] & (0x80 >>> (dot & 7))) != 0;
+    }
+
+    /**
+     * Tells whether no dot of the given raster line is printed, in any plane.
+     *
+     * @param y the raster line
+     * @return true if the line is blank
+     */
+    public boolean isBlankLine(int y) {
+        int from = y * bytesPerLine;
+        for (byte[] plane : planes) {
+            // Arrays.mismatch compares several bytes at a time
+            if (Arrays.mismatch(plane, from, from + bytesPerLine, blankLine, 0, bytesPerLine) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Merge the red plane into the black plane : the red dots override the black dots at the same position.
+     * Does nothing on a monochrome page.
+     */
+    public void mergeLayers() {
+        if (!isTwoColor()) {
+            return;
+        }
+        byte[] black = planes[BLACK];
+        byte[] red = planes[RED];
+        for (int i = 0; i < black.length; i++) {
+            black[i] &= (byte) ~red[i];
+        }
+    }
+
+    /**
+     * Render the page as an image, e.g. for previewing the label. Margins are not rendered.
+     * Black dots are rendered as black (0x000000), red dots as red (0xFF0000) and other pixels as white.
+     *
+     * @return the rendered image
+     */
+    public BufferedImage toImage() {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (isSet(RED, x, y)) {
+                    row[x] = 0xFF0000;
+                } else if (isSet(BLACK, x, y)) {
+                    row[x] = 0x000000;
+                } else {
+                    row[x] = 0xFFFFFF;
+                }
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright (C) 2024 Cédric de Launois
+ * See LICENSE for licensing information.
+ *
+ * Java USB Driver for printing with Brother QL printers.
+ */
+package org.delaunois.brotherql.util;
+
+/**
+ * A source of image rows, as sRGB integers.
+ *
+ * @author Cedric de Launois
+ */
+interface RowSource {
+
+    /**
+     * Read a row of pixels.
+     *
+     * @param y   the row
+     * @param rgb the array receiving the pixels, at least as long as the image width
+     */
+    void readRow(int y, int[] rgb);
+
+}
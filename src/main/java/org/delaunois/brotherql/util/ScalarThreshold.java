@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2024 Cédric de Launois
+ * See LICENSE for licensing information.
+ *
+ * Java USB Driver for printing with Brother QL printers.
+ */
+package org.delaunois.brotherql.util;
+
+/**
+ * Scalar luminance threshold kernel, emitting packed bits into a {@link RasterPage}.
+ * <p>
+ * The luminance is compared in integers : with <code>s = 299 r + 587 g + 114 b</code>, a pixel with
+ * <code>s &lt; 1000 cut</code> is below the cut-off and a pixel with <code>s &gt; 1000 cut</code> is not,
+ * whatever the rounding of {@link Converter#luminance(int)}. Only the pixels with <code>s = 1000 cut</code>
+ * are checked with {@link Converter#luminance(int)}, so that the result is identical.
+ *
+ * @author Cedric de Launois
+ */
+final class ScalarThreshold {
+
+    /**
+     * Number of pixels packed before being stored in the page.
+     */
+    static final int RUN = 32;
+
+    private ScalarThreshold() {
+        // Prevent instanciation
+    }
+
+    /**
+     * Set the pixels of a row whose luminance is below the cut-off.
+     *
+     * @param rgb   the row pixels, as RGB-encoded integers
+     * @param from  the first pixel to convert
+     * @param width the row width
+     * @param cut   the luminance cut-off, between 0 and 256
+     * @param page  the raster page receiving the printed pixels
+     * @param plane the plane of the page to fill
+     * @param y     the row index in the page
+     */
+    static void thresholdRgb(int[] rgb, int from, int width, int cut, RasterPage page, int plane, int y) {
+        int limit = 1000 * cut;
+        for (int start = from; start < width; start += RUN) {
+            int count = Math.min(RUN, width - start);
+            long bits = 0;
+            for (int i = 0; i < count; i++) {
+                int c = rgb[start + i];
+                int s = weightedLuminance(c);
+                if (s < limit || s == limit && Converter.luminance(c) < cut) {
+                    bits |= 1L << i;
+                }
+            }
+            if (bits != 0) {
+                page.setBits(plane, start, y, bits, count);
+            }
+        }
+    }
+
+    /**
+     * Set the pixels of a row whose luminance is below the cut-off.
+     *
+     * @param lum   the luminance of the row pixels
+     * @param from  the first pixel to convert
+     * @param width the row width
+     * @param cut   the luminance cut-off, between 0 and 256
+     * @param page  the raster page receiving the printed pixels
+     * @param plane the plane of the page to fill
+     * @param y     the row index in the page
+     */
+    static void thresholdLuminance(int[] lum, int from, int width, int cut, RasterPage page, int plane, int y) {
+        for (int start = from; start < width; start += RUN) {
+            int count = Math.min(RUN, width - start);
+            long bits = 0;
+            for (int i = 0; i < count; i++) {
+                if (lum[start + i] < cut) {
+                    bits |= 1L << i;
+                }
+            }
+            if (bits != 0) {
+                page.setBits(plane, start, y, bits, count);
+            }
+        }
+    }
+
+    /**
+     * Compute the luminance of a color, multiplied by 1000, exactly.
+     *
+     * @param c the color (sRGB)
+     * @return the luminance multiplied by 1000
+     */
+    static int weightedLuminance(int c) {
+        return 299 * (c >> 16 & 0xFF) + 587 * (c >> 8 & 0xFF) + 114 * (c & 0xFF);
+    }
+
+}
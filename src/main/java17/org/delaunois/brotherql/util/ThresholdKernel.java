@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2024 Cédric de Launois
+ * See LICENSE for licensing information.
+ *
+ * Java USB Driver for printing with Brother QL printers.
+ */
+package org.delaunois.brotherql.util;
+
+/**
+ * Luminance threshold kernel. This is the Java 17 version of the multi-release JAR : the Vector API kernel
+ * is used when the <code>jdk.incubator.vector</code> module is available at runtime
+ * (e.g. with <code>--add-modules jdk.incubator.vector</code>), otherwise the scalar kernel is used.
+ *
+ * @author Cedric de Launois
+ */
+final class ThresholdKernel {
+
+    private static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private ThresholdKernel() {
+        // Prevent instanciation
+    }
+
+    /**
+     * Tells whether the kernel is vectorized.
+     *
+     * @return true if the Vector API is used
+     */
+    static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    /**
+     * Set the pixels of a row whose luminance is below the cut-off.
+     * See {@link ScalarThreshold#thresholdRgb(int[], int, int, int, RasterPage, int, int)}.
+     *
+     * @param rgb   the row pixels, as RGB-encoded integers
+     * @param width the row width
+     * @param cut   the luminance cut-off, between 0 and 256
+     * @param page  the raster page receiving the printed pixels
+     * @param plane the plane of the page to fill
+     * @param y     the row index in the page
+     */
+    static void thresholdRgb(int[] rgb, int width, int cut, RasterPage page, int plane, int y) {
+        if (VECTORIZED) {
+            VectorThreshold.thresholdRgb(rgb, width, cut, page, plane, y);
+        } else {
+            ScalarThreshold.thresholdRgb(rgb, 0, width, cut, page, plane, y);
+        }
+    }
+
+    /**
+     * Set the pixels of a row whose luminance is below the cut-off.
+     * See {@link ScalarThreshold#thresholdLuminance(int[], int, int, int, RasterPage, int, int)}.
+     *
+     * @param lum   the luminance of the row pixels
+     * @param width the row width
+     * @param cut   the luminance cut-off, between 0 and 256
+     * @param page  the raster page receiving the printed pixels
+     * @param plane the plane of the page to fill
+     * @param y     the row index in the page
+     */
+    static void thresholdLuminance(int[] lum, int width, int cut, RasterPage page, int plane, int y) {
+        if (VECTORIZED) {
+            VectorThreshold.thresholdLuminance(lum, width, cut, page, plane, y);
+        } else {
+            ScalarThreshold.thresholdLuminance(lum, 0, width, cut, page, plane, y);
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2024 Cédric de Launois
+ * See LICENSE for licensing information.
+ *
+ * Java USB Driver for printing with Brother QL printers.
+ */
+package org.delaunois.brotherql.util;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Luminance threshold kernel using the Vector API, with the same results as {@link ScalarThreshold}.
+ * The comparison masks are stored in the page as packed bits. Must only be loaded when the
+ * <code>jdk.incubator.vector</code> module is available.
+ *
+ * @author Cedric de Launois
+ */
+final class VectorThreshold {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    // RasterPage.setBits takes at most 57 pixels : wider masks (e.g. 2048-bit SVE) are stored in parts
+    private static final int MASK_PART = 32;
+
+    private VectorThreshold() {
+        // Prevent instanciation
+    }
+
+    /**
+     * See {@link ScalarThreshold#thresholdRgb(int[], int, int, int, RasterPage, int, int)}.
+     *
+     * @param rgb   the row pixels, as RGB-encoded integers
+     * @param width the row width
+     * @param cut   the luminance cut-off, between 0 and 256
+     * @param page  the raster page receiving the printed pixels
+     * @param plane the plane of the page to fill
+     * @param y     the row index in the page
+     */
+    static void thresholdRgb(int[] rgb, int width, int cut, RasterPage page, int plane, int y) {
+        int lanes = SPECIES.length();
+        int limit = 1000 * cut;
+        int x = 0;
+        for (; x <= width - lanes; x += lanes) {
+            IntVector c = IntVector.fromArray(SPECIES, rgb, x);
+            IntVector r = c.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+            IntVector g = c.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+            IntVector b = c.and(0xFF);
+            IntVector s = r.mul(299).add(g.mul(587)).add(b.mul(114));
+
+            long bits = s.compare(VectorOperators.LT, limit).toLong();
+            VectorMask<Integer> ties = s.compare(VectorOperators.EQ, limit);
+            if (ties.anyTrue()) {
+                // Rare : settle the pixels right on the cut-off as the scalar luminance does
+                long t = ties.toLong();
+                while (t != 0) {
+                    int i = Long.numberOfTrailingZeros(t);
+                    if (Converter.luminance(rgb[x + i]) < cut) {
+                        bits |= 1L << i;
+                    }
+                    t &= t - 1;
+                }
+            }
+            if (bits != 0) {
+                setBits(page, plane, x, y, bits, lanes);
+            }
+        }
+        ScalarThreshold.thresholdRgb(rgb, x, width, cut, page, plane, y);
+    }
+
+    /**
+     * See {@link ScalarThreshold#thresholdLuminance(int[], int, int, int, RasterPage, int, int)}.
+     *
+     * @param lum   the luminance of the row pixels
+     * @param width the row width
+     * @param cut   the luminance cut-off, between 0 and 256
+     * @param page  the raster page receiving the printed pixels
+     * @param plane the plane of the page to fill
+     * @param y     the row index in the page
+     */
+    static void thresholdLuminance(int[] lum, int width, int cut, RasterPage page, int plane, int y) {
+        int lanes = SPECIES.length();
+        int x = 0;
+        for (; x <= width - lanes; x += lanes) {
+            long bits = IntVector.fromArray(SPECIES, lum, x).compare(VectorOperators.LT, cut).toLong();
+            if (bits != 0) {
+                setBits(page, plane, x, y, bits, lanes);
+            }
+        }
+        ScalarThreshold.thresholdLuminance(lum, x, width, cut, page, plane, y);
+    }
+
+    /**
+     * Store a comparison mask in the page, in parts of {@link #MASK_PART} pixels for the widest vectors.
+     */
+    private static void setBits(RasterPage page, int plane, int x, int y, long bits, int lanes) {
+        if (lanes <= MASK_PART) {
+            page.setBits(plane, x, y, bits, lanes);
+            return;
+        }
+        for (int i = 0; i < lanes; i += MASK_PART) {
+            page.setBits(plane, x + i, y, bits >>> i, Math.min(MASK_PART, lanes - i));
+        }
+    }
+
+}
@@ -2,6 +2,8 @@ package org.delaunois.brotherql;
 
 import org.delaunois.brotherql.backend.BrotherQLDeviceSimulator;
 import org.delaunois.brotherql.example.PrintExample;
+import org.delaunois.brotherql.protocol.QL;
+import org.delaunois.brotherql.util.RasterPage;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -11,9 +13,19 @@ import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.*;
 
@@ -142,6 +154,178 @@ public class BrotherQLConnectionTest {
         assertEquals(raster, deviceSimulator.getTx());
     }    
 
+    @Test
+    public void testSendJobBatched() throws IOException, BrotherQLException {
+        deviceSimulator.setPreferredWriteSize(4096);
+        InputStream is = PrintExample.class.getResourceAsStream("/white-dove-696.png");
+        InputStream rasterIs = PrintExample.class.getResourceAsStream("/white-dove-696.raster");
+        String raster = new String(Objects.requireNonNull(rasterIs).readAllBytes());
+        BufferedImage img = ImageIO.read(Objects.requireNonNull(is));
+
+        BrotherQLJob job = new BrotherQLJob()
+                .setAutocut(true)
+                .setBrightness(1.0f)
+                .setImages(List.of(img));
+
+        connection.sendJob(job);
+
+        // Same bytes, in fewer writes
+        String tx = deviceSimulator.getTx();
+        assertEquals(raster.replace("\n", ""), tx.replace("\n", ""));
+        assertTrue(tx.split("\n").length < raster.split("\n").length / 10);
+    }
+
+    @Test
+    public void testSubmitMatchesSendJob() throws Exception {
+        InputStream is = PrintExample.class.getResourceAsStream("/white-dove-696.png");
+        BufferedImage img = ImageIO.read(Objects.requireNonNull(is));
+        BrotherQLJob job = new BrotherQLJob()
+                .setAutocut(true)
+                .setImages(List.of(img, img, img))
+                .setLookAhead(1);
+
+        deviceSimulator.clearTx();
+        connection.sendJob(job);
+        String expected = deviceSimulator.getTx();
+        deviceSimulator.clearTx();
+
+        List<Integer> printedPages = new ArrayList<>();
+        BrotherQLJobResult result = connection.submit(job, (page, status) -> printedPages.add(page)).get();
+
+        assertTrue(result.isComplete());
+        assertEquals(3, result.getPagesPrinted());
+        assertEquals(List.of(0, 1, 2), printedPages);
+        assertEquals(expected, deviceSimulator.getTx());
+    }
+
+    @Test
+    public void testSubmitSingleImageOnSingleThreadExecutor() throws Exception {
+        InputStream is = PrintExample.class.getResourceAsStream("/white-dove-696.png");
+        BufferedImage img = ImageIO.read(Objects.requireNonNull(is));
+        BrotherQLJob job = new BrotherQLJob()
+                .setAutocut(true)
+                .setImages(List.of(img));
+
+        deviceSimulator.clearTx();
+        connection.sendJob(job);
+        String expected = deviceSimulator.getTx();
+        deviceSimulator.clearTx();
+
+        // The image is converted on the only thread of the executor, which cannot also dither its rows
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            job.setRasterExecutor(executor).setRasterParallelism(4);
+            BrotherQLJobResult result = connection.submit(job).get(30, TimeUnit.SECONDS);
+            assertTrue(result.isComplete());
+            assertEquals(expected, deviceSimulator.getTx());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCloseWaitsForSubmittedJob() throws Exception {
+        InputStream is = PrintExample.class.getResourceAsStream("/white-dove-696.png");
+        BufferedImage img = ImageIO.read(Objects.requireNonNull(is));
+        BrotherQLJob job = new BrotherQLJob()
+                .setAutocut(true)
+                .setImages(List.of(img, img, img));
+
+        // The first job is held after its first page, the second one is queued behind it
+        CountDownLatch printing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<BrotherQLJobResult> running = connection.submit(job, (page, status) -> {
+            printing.countDown();
+            try {
+                return release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        });
+        CompletableFuture<BrotherQLJobResult> queued = connection.submit(job);
+        assertTrue(printing.await(10, TimeUnit.SECONDS));
+
+        Thread closer = new Thread(connection::close);
+        closer.start();
+        closer.join(200);
+        assertTrue(closer.isAlive());
+        assertFalse(deviceSimulator.isClosed());
+
+        release.countDown();
+        closer.join(10000);
+        assertFalse(closer.isAlive());
+        assertTrue(deviceSimulator.isClosed());
+
+        // The running job stopped after its current page
+        assertEquals(1, running.get().getPagesPrinted());
+        try {
+            queued.get();
+            fail("The queued job should fail when the connection is closed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BrotherQLException);
+        }
+    }
+
+    @Test
+    public void testStopWaitingPrintOnReadError() throws Exception {
+        InputStream is = PrintExample.class.getResourceAsStream("/white-dove-696.png");
+        BufferedImage img = ImageIO.read(Objects.requireNonNull(is));
+        BrotherQLJob job = new BrotherQLJob()
+                .setAutocut(true)
+                .setImages(List.of(img));
+
+        // Once the page is sent, status reads fail immediately, as on a USB transfer error
+        AtomicBoolean failReads = new AtomicBoolean();
+        BrotherQLDeviceSimulator failingDevice = new BrotherQLDeviceSimulator(BrotherQLModel.QL_700_P, BrotherQLMedia.CT_62_720) {
+            @Override
+            public ByteBuffer readStatus(long timeout) {
+                return failReads.get() ? null : super.readStatus(timeout);
+            }
+
+            @Override
+            public void write(byte[] data, long timeout) throws BrotherQLException {
+                super.write(data, timeout);
+                failReads.set(Arrays.equals(data, QL.CMD_PRINT_LAST));
+            }
+        };
+
+        try (BrotherQLConnection failingConnection = new BrotherQLConnection(failingDevice)) {
+            failingConnection.open();
+            long start = System.currentTimeMillis();
+            BrotherQLJobResult result = failingConnection.printJob(job, null);
+            assertTrue(System.currentTimeMillis() - start < 1500);
+            assertEquals(1, result.getPagesPrinted());
+            assertNull(result.getStatus());
+        }
+    }
+
+    @Test
+    public void testResumeAfterDisconnection() throws Exception {
+        InputStream is = PrintExample.class.getResourceAsStream("/white-dove-696.png");
+        BufferedImage img = ImageIO.read(Objects.requireNonNull(is));
+        BrotherQLJob job = new BrotherQLJob()
+                .setAutocut(true)
+                .setImages(List.of(img, img, img));
+
+        // Without reconnection, the job fails
+        deviceSimulator.setDisconnectAfterPrints(2);
+        try {
+            connection.sendJob(job);
+            fail("The job should fail when the printer is disconnected");
+        } catch (BrotherQLException e) {
+            // Expected
+        }
+        deviceSimulator.reconnect(0);
+
+        // With reconnection, the second page is printed again and the job completes
+        List<Integer> printedPages = new ArrayList<>();
+        deviceSimulator.setDisconnectAfterPrints(2);
+        deviceSimulator.clearTx();
+        BrotherQLJobResult result = connection.submit(job.setReconnectTimeout(1000), (page, status) -> printedPages.add(page)).get();
+        assertTrue(result.isComplete());
+        assertEquals(List.of(0, 1, 2), printedPages);
+    }
+
     @Test
     public void testSendJobDpi600() throws IOException, BrotherQLException {
         InputStream is = PrintExample.class.getResourceAsStream("/white-dove-1392.png");
@@ -160,4 +344,26 @@ public class BrotherQLConnectionTest {
         assertEquals(raster, deviceSimulator.getTx());
     }    
 
+    @Test
+    public void testRasterPagesParallel() throws IOException {
+        BufferedImage dove = ImageIO.read(Objects.requireNonNull(PrintExample.class.getResourceAsStream("/white-dove-696.png")));
+        BufferedImage image = ImageIO.read(Objects.requireNonNull(PrintExample.class.getResourceAsStream("/test-image.png")));
+        List<BufferedImage> images = List.of(dove, image, dove, image, image, dove, image);
+
+        BrotherQLJob job = new BrotherQLJob().setImages(images);
+        List<RasterPage> expected = BrotherQLConnection.rasterPages(job, BrotherQLMedia.CT_62_720);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            job.setRasterExecutor(pool).setRasterParallelism(3);
+            List<RasterPage> pages = BrotherQLConnection.rasterPages(job, BrotherQLMedia.CT_62_720);
+            assertEquals(expected.size(), pages.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(expected.get(i).getPlane(RasterPage.BLACK), pages.get(i).getPlane(RasterPage.BLACK));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+package org.delaunois.brotherql;
+
+import org.delaunois.brotherql.backend.BrotherQLDeviceSimulator;
+import org.delaunois.brotherql.example.PrintExample;
+import org.delaunois.brotherql.util.Rx;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BrotherQLFleetTest {
+
+    @Test
+    public void testSubmitToManyPrinters() throws Exception {
+        InputStream is = PrintExample.class.getResourceAsStream("/white-dove-696.png");
+        BufferedImage img = ImageIO.read(Objects.requireNonNull(is));
+        BrotherQLJob job = new BrotherQLJob().setImages(List.of(img));
+
+        // More printers than platform threads
+        try (BrotherQLFleet fleet = new BrotherQLFleet(2, 4, id -> new BrotherQLConnection(
+                new BrotherQLDeviceSimulator(BrotherQLModel.QL_820NWB, BrotherQLMedia.CT_62_720)))) {
+
+            List<CompletableFuture<BrotherQLJobResult>> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                results.add(fleet.submit("tcp://10.0.0." + i, job));
+                results.add(fleet.submit("tcp://10.0.0." + i, job));
+            }
+
+            for (CompletableFuture<BrotherQLJobResult> result : results) {
+                assertTrue(result.get(30, TimeUnit.SECONDS).isComplete());
+            }
+            assertEquals(20, fleet.getPrinters().size());
+        }
+    }
+
+    @Test
+    public void testCancelQueuedJobAndClose() throws Exception {
+        InputStream is = PrintExample.class.getResourceAsStream("/white-dove-696.png");
+        BufferedImage img = ImageIO.read(Objects.requireNonNull(is));
+        BrotherQLJob job = new BrotherQLJob().setImages(List.of(img));
+        CountDownLatch printing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        String printer = "tcp://10.0.0.1";
+
+        BrotherQLFleet fleet = new BrotherQLFleet(2, 4, id -> new BrotherQLConnection(
+                new BrotherQLDeviceSimulator(BrotherQLModel.QL_820NWB, BrotherQLMedia.CT_62_720)));
+        try {
+            CompletableFuture<BrotherQLJobResult> first = fleet.submit(printer, job, (page, status) -> {
+                printing.countDown();
+                try {
+                    return release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            });
+            assertTrue(printing.await(10, TimeUnit.SECONDS));
+
+            // Cancelling the future of a queued job removes it from the queue
+            CompletableFuture<BrotherQLJobResult> second = fleet.submit(printer, job);
+            assertEquals(1, fleet.getQueueSize(printer));
+            assertTrue(second.cancel(false));
+            assertEquals(0, fleet.getQueueSize(printer));
+
+            release.countDown();
+            assertTrue(first.get(10, TimeUnit.SECONDS).isComplete());
+        } finally {
+            fleet.close();
+        }
+
+        try {
+            fleet.submit(printer, job);
+            fail("Fleet should be closed");
+        } catch (BrotherQLException e) {
+            assertEquals(Rx.msg("error.fleetclosed"), e.getMessage());
+        }
+    }
+
+}
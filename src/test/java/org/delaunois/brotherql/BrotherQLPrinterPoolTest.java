@@ -0,0 +1,140 @@
+package org.delaunois.brotherql;
+
+import org.delaunois.brotherql.backend.BrotherQLDeviceSimulator;
+import org.delaunois.brotherql.example.PrintExample;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import static org.junit.Assert.*;
+
+public class BrotherQLPrinterPoolTest {
+
+    @Test
+    public void testPrinterInErrorIsExcluded() throws Exception {
+        BrotherQLDeviceSimulator failing = new BrotherQLDeviceSimulator(BrotherQLModel.QL_820NWB, BrotherQLMedia.CT_62_720);
+        failing.setStatusType(BrotherQLStatusType.ERROR_OCCURRED);
+        BrotherQLDeviceSimulator working = new BrotherQLDeviceSimulator(BrotherQLModel.QL_820NWB, BrotherQLMedia.CT_62_720);
+        Map<String, BrotherQLDeviceSimulator> devices = Map.of("failing", failing, "working", working);
+
+        InputStream is = PrintExample.class.getResourceAsStream("/white-dove-696.png");
+        BufferedImage img = ImageIO.read(Objects.requireNonNull(is));
+        BrotherQLJob job = new BrotherQLJob().setImages(List.of(img)).setMedia(BrotherQLMedia.CT_62_720);
+
+        BrotherQLSpooler spooler = new BrotherQLSpooler(4, id -> new BrotherQLConnection(devices.get(id)));
+        try (spooler; BrotherQLPrinterPool pool = new BrotherQLPrinterPool(spooler, List.of("failing", "working"))) {
+            // Both printers are idle : the job goes to the first one, fails, and is moved to the other one
+            BrotherQLJobResult result = pool.submit(job).get(10, TimeUnit.SECONDS);
+            assertTrue(result.isComplete());
+            assertEquals(List.of("working"), pool.getAvailablePrinters());
+
+            // No printer with a matching media
+            pool.setMedia("working", BrotherQLMedia.CT_29_720);
+            try {
+                pool.submit(job);
+                fail("No printer should accept the job");
+            } catch (BrotherQLException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testRoutesToLeastLoadedPrinter() throws Exception {
+        Map<String, BrotherQLDeviceSimulator> devices = Map.of(
+                "a", new BrotherQLDeviceSimulator(BrotherQLModel.QL_820NWB, BrotherQLMedia.CT_62_720),
+                "b", new BrotherQLDeviceSimulator(BrotherQLModel.QL_820NWB, BrotherQLMedia.CT_62_720));
+
+        InputStream is = PrintExample.class.getResourceAsStream("/white-dove-696.png");
+        BufferedImage img = ImageIO.read(Objects.requireNonNull(is));
+        BrotherQLJob onePage = new BrotherQLJob().setImages(List.of(img));
+        CountDownLatch release = new CountDownLatch(1);
+
+        BrotherQLSpooler spooler = new BrotherQLSpooler(4, id -> new BrotherQLConnection(devices.get(id)));
+        try (spooler; BrotherQLPrinterPool pool = new BrotherQLPrinterPool(spooler, List.of("a", "b"))) {
+            // Printer a holds a job after its first page : 2 pages pending
+            CountDownLatch aPrinting = new CountDownLatch(1);
+            CompletableFuture<BrotherQLJobResult> jobA = pool.submit(
+                    new BrotherQLJob().setImages(List.of(img, img, img)), hold(aPrinting, release));
+            assertTrue(aPrinting.await(10, TimeUnit.SECONDS));
+
+            // The idle printer b gets the next job, and prints it while a is still held
+            assertTrue(pool.submit(onePage).get(10, TimeUnit.SECONDS).isComplete());
+
+            // Printer b holds a longer job after its first page : 3 pages pending
+            CountDownLatch bPrinting = new CountDownLatch(1);
+            CompletableFuture<BrotherQLJobResult> jobB = pool.submit(
+                    new BrotherQLJob().setImages(List.of(img, img, img, img)), hold(bPrinting, release));
+            assertTrue(bPrinting.await(10, TimeUnit.SECONDS));
+
+            // Fewer pages pending on a
+            CompletableFuture<BrotherQLJobResult> next = pool.submit(onePage);
+            assertEquals(1, spooler.getQueueSize("a"));
+            assertEquals(0, spooler.getQueueSize("b"));
+
+            // Same pending pages on both printers : the shortest queue wins
+            CompletableFuture<BrotherQLJobResult> last = pool.submit(onePage);
+            assertEquals(1, spooler.getQueueSize("a"));
+            assertEquals(1, spooler.getQueueSize("b"));
+
+            release.countDown();
+            for (CompletableFuture<BrotherQLJobResult> result : List.of(jobA, jobB, next, last)) {
+                assertTrue(result.get(10, TimeUnit.SECONDS).isComplete());
+            }
+        }
+    }
+
+    @Test
+    public void testShardedJob() throws Exception {
+        Map<String, BrotherQLDeviceSimulator> devices = Map.of(
+                "a", new BrotherQLDeviceSimulator(BrotherQLModel.QL_820NWB, BrotherQLMedia.CT_62_720),
+                "b", new BrotherQLDeviceSimulator(BrotherQLModel.QL_820NWB, BrotherQLMedia.CT_62_720));
+
+        InputStream is = PrintExample.class.getResourceAsStream("/white-dove-696.png");
+        BufferedImage img = ImageIO.read(Objects.requireNonNull(is));
+        BrotherQLJob job = new BrotherQLJob().setImages(List.of(img, img, img, img, img)).setCutEach(2);
+
+        BrotherQLSpooler spooler = new BrotherQLSpooler(4, id -> new BrotherQLConnection(devices.get(id)));
+        try (spooler; BrotherQLPrinterPool pool = new BrotherQLPrinterPool(spooler, List.of("a", "b"))) {
+            Set<Integer> printedPages = ConcurrentHashMap.newKeySet();
+            BrotherQLShardedJob sharded = pool.submitSharded(job, 4, (page, status) -> printedPages.add(page));
+
+            // 3 groups of 2 pages on 2 printers
+            assertEquals(2, sharded.getShards().size());
+            assertEquals(4, sharded.getShards().get(0).getPageCount());
+            assertEquals(4, sharded.getShards().get(1).getFirstPage());
+            assertEquals(1, sharded.getShards().get(1).getPageCount());
+
+            BrotherQLJobResult result = sharded.getResult().get(10, TimeUnit.SECONDS);
+            assertTrue(result.isComplete());
+            assertEquals(5, result.getPagesPrinted());
+            assertEquals(Set.of(0, 1, 2, 3, 4), printedPages);
+        }
+    }
+
+    /**
+     * A listener holding the job on its first page until released.
+     */
+    private static BiFunction<Integer, BrotherQLStatus, Boolean> hold(CountDownLatch printing, CountDownLatch release) {
+        return (page, status) -> {
+            printing.countDown();
+            try {
+                return release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        };
+    }
+
+}
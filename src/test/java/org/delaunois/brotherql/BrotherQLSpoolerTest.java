@@ -0,0 +1,70 @@
+package org.delaunois.brotherql;
+
+import org.delaunois.brotherql.backend.BrotherQLDeviceSimulator;
+import org.delaunois.brotherql.example.PrintExample;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BrotherQLSpoolerTest {
+
+    private static final String PRINTER = "usb://Brother/QL-700";
+
+    @Test
+    public void testQueueFullAndCancel() throws Exception {
+        BrotherQLJob job = newJob();
+        CountDownLatch printing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (BrotherQLSpooler spooler = new BrotherQLSpooler(1, id -> new BrotherQLConnection(
+                new BrotherQLDeviceSimulator(BrotherQLModel.QL_700_P, BrotherQLMedia.CT_62_720)))) {
+
+            BrotherQLSpoolJob first = spooler.submit(PRINTER, job, (page, status) -> {
+                printing.countDown();
+                try {
+                    return release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            });
+            assertTrue(printing.await(10, TimeUnit.SECONDS));
+            assertEquals(BrotherQLSpoolJob.State.PRINTING, first.getState());
+
+            // The queue holds a single job
+            BrotherQLSpoolJob second = spooler.submit(PRINTER, job);
+            assertEquals(1, spooler.getQueueSize(PRINTER));
+            try {
+                spooler.submit(PRINTER, job);
+                fail("Queue should be full");
+            } catch (BrotherQLException e) {
+                // Expected
+            }
+
+            assertTrue(second.cancel());
+            assertEquals(BrotherQLSpoolJob.State.CANCELLED, second.getState());
+            assertEquals(0, spooler.getQueueSize(PRINTER));
+
+            BrotherQLSpoolJob third = spooler.submit(PRINTER, job);
+            release.countDown();
+            assertTrue(first.getResult().get(10, TimeUnit.SECONDS).isComplete());
+            assertTrue(third.getResult().get(10, TimeUnit.SECONDS).isComplete());
+            assertEquals(BrotherQLSpoolJob.State.DONE, third.getState());
+        }
+    }
+
+    private static BrotherQLJob newJob() throws IOException {
+        InputStream is = PrintExample.class.getResourceAsStream("/white-dove-696.png");
+        BufferedImage img = ImageIO.read(Objects.requireNonNull(is));
+        return new BrotherQLJob().setImages(List.of(img));
+    }
+
+}
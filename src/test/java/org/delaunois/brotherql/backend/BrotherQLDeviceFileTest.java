@@ -5,7 +5,9 @@ import org.delaunois.brotherql.BrotherQLJob;
 import org.delaunois.brotherql.BrotherQLMedia;
 import org.delaunois.brotherql.example.PrintExample;
 import org.delaunois.brotherql.util.Hex;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
@@ -22,6 +24,9 @@ public class BrotherQLDeviceFileTest {
 
     private static final System.Logger LOGGER = System.getLogger(BrotherQLDeviceFileTest.class.getName());
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void testSendJob() throws Exception {
         InputStream is = PrintExample.class.getResourceAsStream("/white-dove-306.png");
@@ -34,12 +39,12 @@ public class BrotherQLDeviceFileTest {
                 .setBrightness(1.0f)
                 .setImages(List.of(img));
         
-        BrotherQLConnection connection = new BrotherQLConnection("file:white-dove-306.bin?model=QL-820NWB");
+        File bin = new File(folder.getRoot(), "white-dove-306.bin");
+        BrotherQLConnection connection = new BrotherQLConnection(bin.toURI() + "?model=QL-820NWB");
         connection.open();
         connection.sendJob(job);
         connection.close();
         
-        File bin = new File("white-dove-306.bin");
         assertTrue(bin.exists());
 
         LOGGER.log(System.Logger.Level.DEBUG, "File dump\n" + 
@@ -58,12 +63,12 @@ public class BrotherQLDeviceFileTest {
                 .setBrightness(1.0f)
                 .setImages(List.of(img));
         
-        BrotherQLConnection connection = new BrotherQLConnection("file:test-image.bin?model=QL-820NWB");
+        File bin = new File(folder.getRoot(), "test-image.bin");
+        BrotherQLConnection connection = new BrotherQLConnection(bin.toURI() + "?model=QL-820NWB");
         connection.open();
         connection.sendJob(job);
         connection.close();
         
-        File bin = new File("test-image.bin");
         assertTrue(bin.exists());
 
         LOGGER.log(System.Logger.Level.DEBUG, "File dump\n" + 
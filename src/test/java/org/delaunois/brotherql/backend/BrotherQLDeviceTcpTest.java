@@ -0,0 +1,153 @@
+package org.delaunois.brotherql.backend;
+
+import org.delaunois.brotherql.BrotherQLConnection;
+import org.delaunois.brotherql.BrotherQLException;
+import org.delaunois.brotherql.BrotherQLJob;
+import org.delaunois.brotherql.BrotherQLMedia;
+import org.delaunois.brotherql.example.PrintExample;
+import org.delaunois.brotherql.util.Hex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class BrotherQLDeviceTcpTest {
+
+    private ServerSocketChannel server;
+
+    @Before
+    public void setUp() throws IOException {
+        // A fake printer on the loopback interface, with a small receive buffer
+        server = ServerSocketChannel.open();
+        server.setOption(StandardSocketOptions.SO_RCVBUF, 4096);
+        server.bind(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void testSendJob() throws Exception {
+        InputStream is = PrintExample.class.getResourceAsStream("/white-dove-696.png");
+        InputStream rasterIs = PrintExample.class.getResourceAsStream("/white-dove-696.raster");
+        String raster = new String(Objects.requireNonNull(rasterIs).readAllBytes());
+        BufferedImage img = ImageIO.read(Objects.requireNonNull(is));
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Thread printer = new Thread(() -> receive(received));
+        printer.start();
+
+        BrotherQLJob job = new BrotherQLJob()
+                .setAutocut(true)
+                .setMedia(BrotherQLMedia.CT_62_720)
+                .setBrightness(1.0f)
+                .setImages(List.of(img));
+
+        try (BrotherQLConnection connection = new BrotherQLConnection(uri())) {
+            connection.open();
+            connection.sendJob(job);
+        }
+        printer.join(5000);
+
+        assertEquals(raster.replace("\n", ""), Hex.toString(received.toByteArray()));
+    }
+
+    @Test
+    public void testWriteTimeout() throws Exception {
+        BrotherQLDeviceTcp device = new BrotherQLDeviceTcp(URI.create(uri()));
+        device.setSendBufferSize(4096);
+        device.setWriteTimeout(200);
+        device.open();
+
+        // The fake printer accepts the connection but never reads
+        try (SocketChannel ignored = server.accept()) {
+            long start = System.currentTimeMillis();
+            try {
+                device.write(ByteBuffer.allocate(256 * 1024), 100);
+                fail("Write should time out");
+            } catch (BrotherQLException e) {
+                // Expected
+            }
+            assertTrue(System.currentTimeMillis() - start < 5000);
+            assertTrue(device.isClosed());
+        }
+    }
+
+    @Test
+    public void testConcurrentWritesDoNotInterleave() throws Exception {
+        BrotherQLDeviceTcp device = new BrotherQLDeviceTcp(URI.create(uri()));
+        device.setSendBufferSize(4096);
+        device.open();
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Thread printer = new Thread(() -> receive(received));
+        printer.start();
+
+        // Both writes exceed the socket buffers, so that the first one is still pending when the second starts
+        int size = 64 * 1024;
+        List<Thread> writers = new ArrayList<>();
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        for (byte b : new byte[]{'A', 'B'}) {
+            byte[] data = new byte[size];
+            Arrays.fill(data, b);
+            Thread writer = new Thread(() -> {
+                try {
+                    device.write(data, 5000);
+                } catch (BrotherQLException e) {
+                    failures.add(e);
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join(10000);
+        }
+        device.close();
+        printer.join(5000);
+
+        assertTrue(failures.isEmpty());
+        String text = received.toString(StandardCharsets.US_ASCII);
+        assertEquals(2 * size, text.length());
+        assertTrue(text.matches("A+B+|B+A+"));
+    }
+
+    private String uri() throws IOException {
+        InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+        return "tcp://127.0.0.1:" + address.getPort() + "/QL-700";
+    }
+
+    private void receive(ByteArrayOutputStream received) {
+        try (SocketChannel client = server.accept()) {
+            ByteBuffer buffer = ByteBuffer.allocate(1024);
+            while (client.read(buffer) >= 0) {
+                received.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            // Connection closed
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+package org.delaunois.brotherql.backend;
+
+import org.delaunois.brotherql.BrotherQLModel;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BrotherQLUsbRegistryTest {
+
+    @Test
+    public void testListDevicesFromRegistry() throws Exception {
+        BrotherQLUsbRegistry registry = BrotherQLUsbRegistry.getInstance();
+        try {
+            assertSame(registry, BrotherQLUsbRegistry.getInstance());
+            List<String> devices = registry.listDevices();
+            assertEquals(devices, BrotherQLDeviceUsb.listDevices());
+            assertNull(registry.find(null, "no-such-serial"));
+        } finally {
+            registry.close();
+        }
+        assertNotSame(registry, BrotherQLUsbRegistry.getInstance());
+        BrotherQLUsbRegistry.getInstance().close();
+    }
+
+    @Test
+    public void testOnlyPrintersAreRegistered() {
+        int vendor = BrotherQLDeviceUsb.BROTHER_VENDOR_ID;
+        assertTrue(BrotherQLUsbRegistry.isPrinter(vendor, BrotherQLModel.QL_700_P.usbProductId));
+        // A Brother device which is not a known printer, e.g. a scanner
+        assertFalse(BrotherQLUsbRegistry.isPrinter(vendor, 0x0001));
+        assertFalse(BrotherQLUsbRegistry.isPrinter(0x1234, BrotherQLModel.QL_700_P.usbProductId));
+    }
+
+}
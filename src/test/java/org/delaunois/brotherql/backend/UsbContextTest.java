@@ -0,0 +1,34 @@
+package org.delaunois.brotherql.backend;
+
+import org.junit.Test;
+import org.usb4java.Context;
+
+import static org.junit.Assert.*;
+
+public class UsbContextTest {
+
+    @Test
+    public void testSharedContext() throws Exception {
+        Context context = UsbContext.acquire();
+        try {
+            // Discovery and devices share the context in use
+            assertSame(context, UsbContext.acquire());
+            UsbContext.release();
+            try (BrotherQLUsbRegistry registry = BrotherQLUsbRegistry.getInstance()) {
+                registry.listDevices();
+                assertSame(context, UsbContext.acquire());
+                UsbContext.release();
+            }
+        } finally {
+            UsbContext.release();
+        }
+
+        try {
+            UsbContext.release();
+            fail("Context should not be in use");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.delaunois.brotherql.protocol;
+
+import org.delaunois.brotherql.BrotherQLMedia;
+import org.delaunois.brotherql.util.PackBits;
+import org.delaunois.brotherql.util.RasterPage;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class RasterLineEncoderTest {
+
+    @Test
+    public void testEncodeTwoColorLine() {
+        BrotherQLMedia media = BrotherQLMedia.CT_62_720;
+        RasterPage page = new RasterPage(media.bodyWidthPx, 2, media.leftMarginPx, media.rightMarginPx, true);
+        page.set(RasterPage.BLACK, media.bodyWidthPx - 1, 1);
+        page.set(RasterPage.RED, 0, 1);
+
+        RasterLineEncoder encoder = new RasterLineEncoder(media, true);
+        int length = encoder.encode(page, 1);
+        byte[] line = encoder.getBuffer();
+
+        assertEquals(2 * (3 + media.rgtSizeBytes), length);
+        assertArrayEquals(new byte[]{0x77, 0x01, (byte) media.rgtSizeBytes}, Arrays.copyOf(line, 3));
+        assertEquals(0x08, line[3 + 1]);
+        int red = 3 + media.rgtSizeBytes;
+        assertArrayEquals(new byte[]{0x77, 0x02, (byte) media.rgtSizeBytes}, Arrays.copyOfRange(line, red, red + 3));
+        assertEquals(0x10, line[red + 3 + 88]);
+    }
+
+    @Test
+    public void testEncodeCompressedLine() {
+        BrotherQLMedia media = BrotherQLMedia.CT_62_720;
+        RasterPage page = new RasterPage(media.bodyWidthPx, 1, media.leftMarginPx, media.rightMarginPx, false);
+        page.set(RasterPage.BLACK, 10, 0);
+
+        RasterLineEncoder encoder = new RasterLineEncoder(media, false, true);
+        int length = encoder.encode(page, 0);
+        byte[] line = encoder.getBuffer();
+
+        assertTrue(length < 3 + media.rgtSizeBytes);
+        assertEquals(0x67, line[0]);
+        assertEquals(length - 3, line[2]);
+        byte[] decoded = new byte[media.rgtSizeBytes];
+        assertEquals(media.rgtSizeBytes, PackBits.decode(line, 3, length - 3, decoded, 0));
+        assertArrayEquals(Arrays.copyOfRange(page.getPlane(RasterPage.BLACK), 0, media.rgtSizeBytes), decoded);
+    }
+
+    @Test
+    public void testEncodeBlankLine() {
+        BrotherQLMedia media = BrotherQLMedia.CT_62_720;
+        RasterPage page = new RasterPage(media.bodyWidthPx, 1, media.leftMarginPx, media.rightMarginPx, false);
+
+        RasterLineEncoder encoder = new RasterLineEncoder(media, false, true);
+        assertEquals(1, encoder.encode(page, 0));
+        assertEquals(0x5A, encoder.getBuffer()[0]);
+
+        // Not available without compression
+        encoder = new RasterLineEncoder(media, false, false);
+        assertEquals(3 + media.rgtSizeBytes, encoder.encode(page, 0));
+    }
+
+    @Test
+    public void testEncodeIntoByteBuffer() {
+        BrotherQLMedia media = BrotherQLMedia.CT_62_720;
+        RasterPage page = new RasterPage(media.bodyWidthPx, 2, media.leftMarginPx, media.rightMarginPx, false);
+        page.set(RasterPage.BLACK, 100, 1);
+
+        for (boolean compress : new boolean[]{false, true}) {
+            RasterLineEncoder encoder = new RasterLineEncoder(media, true, compress);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(2 * encoder.getMaxLineLength());
+            int length = encoder.encode(page, 0, buffer);
+            length += encoder.encode(page, 1, buffer);
+            assertEquals(length, buffer.position());
+
+            int expected = encoder.encode(page, 1);
+            byte[] line = new byte[expected];
+            buffer.position(length - expected).get(line);
+            assertArrayEquals(Arrays.copyOf(encoder.getBuffer(), expected), line);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEncodeWrongLineSize() {
+        new RasterLineEncoder(BrotherQLMedia.CT_62_720, false).encode(new RasterPage(100, 1, false), 0);
+    }
+
+}
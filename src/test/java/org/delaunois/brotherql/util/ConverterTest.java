@@ -0,0 +1,162 @@
+package org.delaunois.brotherql.util;
+
+import org.delaunois.brotherql.example.PrintExample;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConverterTest {
+
+    @Test
+    public void testDitheringMatchesGenericAlgorithm() throws IOException {
+        BufferedImage[] images = {loadImage("/test-image.png"), noise(BufferedImage.TYPE_INT_RGB, 300, 120)};
+        Converter.ARGB[][] palettes = {Converter.PALETTE_BLACK_WHITE, Converter.PALETTE_RED_WHITE};
+
+        for (BufferedImage image : images) {
+            for (Converter.ARGB[] palette : palettes) {
+                // A 3-color palette repeating the background color gives the same result,
+                // but goes through the generic algorithm
+                Converter.ARGB[] generic = {palette[0], palette[1], palette[1]};
+                assertSameImage(Converter.floydSteinbergDithering(image, generic),
+                        Converter.floydSteinbergDithering(image, palette));
+            }
+        }
+    }
+
+    @Test
+    public void testParallelDitheringMatchesSequential() throws IOException {
+        BufferedImage[] images = {loadImage("/test-image.png"), noise(BufferedImage.TYPE_INT_RGB, 213, 1500)};
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (BufferedImage image : images) {
+                for (Converter.ARGB[] palette : new Converter.ARGB[][]{Converter.PALETTE_BLACK_WHITE, Converter.PALETTE_RED_WHITE}) {
+                    RasterPage expected = new RasterPage(image.getWidth(), image.getHeight(), false);
+                    Converter.floydSteinbergDithering(image, 1.3f, palette, expected, RasterPage.BLACK);
+
+                    for (int parallelism : new int[]{2, 3, 8}) {
+                        RasterPage page = new RasterPage(image.getWidth(), image.getHeight(), false);
+                        Converter.floydSteinbergDithering(image, 1.3f, palette, page, RasterPage.BLACK, pool, parallelism);
+                        assertArrayEquals(expected.getPlane(RasterPage.BLACK), page.getPlane(RasterPage.BLACK));
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testOrderedDithering() {
+        BufferedImage image = new BufferedImage(16, 3, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 16; x++) {
+            image.setRGB(x, 0, 0x000000);
+            image.setRGB(x, 1, 0xFF0000);
+            image.setRGB(x, 2, 0xFFFFFF);
+        }
+
+        RasterPage page = new RasterPage(16, 3, true);
+        Converter.orderedDithering(image, Converter.PALETTE_BLACK_WHITE, page, RasterPage.BLACK);
+        Converter.orderedDithering(image, Converter.PALETTE_RED_WHITE, page, RasterPage.RED);
+        for (int x = 0; x < 16; x++) {
+            assertTrue(page.isSet(RasterPage.BLACK, x, 0));
+            assertTrue(page.isSet(RasterPage.RED, x, 1));
+            assertFalse(page.isSet(RasterPage.BLACK, x, 2));
+            assertFalse(page.isSet(RasterPage.RED, x, 2));
+        }
+
+        // Mid-gray prints half of the dots of each 8x8 tile
+        BufferedImage gray = new BufferedImage(8, 8, BufferedImage.TYPE_BYTE_GRAY);
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                gray.setRGB(x, y, 0x808080);
+            }
+        }
+        RasterPage grayPage = new RasterPage(8, 8, false);
+        Converter.orderedDithering(gray, Converter.PALETTE_BLACK_WHITE, grayPage, RasterPage.BLACK);
+        int printed = 0;
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                printed += grayPage.isSet(RasterPage.BLACK, x, y) ? 1 : 0;
+            }
+        }
+        assertEquals(32, printed);
+    }
+
+    @Test
+    public void testTwoColorMatchesLayers() throws IOException {
+        BufferedImage image = loadImage("/test-image.png");
+        BufferedImage[] layers = Converter.extractLayer(image, color -> Converter.isRed(color.toRGB()));
+
+        RasterPage expected = new RasterPage(image.getWidth(), image.getHeight(), true);
+        Converter.floydSteinbergDithering(layers[0], Converter.PALETTE_RED_WHITE, expected, RasterPage.RED);
+        Converter.floydSteinbergDithering(layers[1], Converter.PALETTE_BLACK_WHITE, expected, RasterPage.BLACK);
+        expected.mergeLayers();
+
+        RasterPage page = new RasterPage(image.getWidth(), image.getHeight(), true);
+        Converter.twoColorDithering(image, page, null, 1);
+        assertArrayEquals(expected.getPlane(RasterPage.RED), page.getPlane(RasterPage.RED));
+        assertArrayEquals(expected.getPlane(RasterPage.BLACK), page.getPlane(RasterPage.BLACK));
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            page = new RasterPage(image.getWidth(), image.getHeight(), true);
+            Converter.twoColorDithering(image, page, pool, 3);
+            assertArrayEquals(expected.getPlane(RasterPage.RED), page.getPlane(RasterPage.RED));
+            assertArrayEquals(expected.getPlane(RasterPage.BLACK), page.getPlane(RasterPage.BLACK));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testThresholdImage() {
+        BufferedImage image = noise(BufferedImage.TYPE_INT_RGB, 77, 40);
+        BufferedImage converted = Converter.threshold(image, 0.4f, Color.RED, Color.WHITE);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                boolean low = Converter.luminance(image.getRGB(x, y)) / 255.0f < 0.4f;
+                assertEquals((low ? Color.RED : Color.WHITE).getRGB(), converted.getRGB(x, y));
+            }
+        }
+        assertSameImage(Converter.threshold(image, 0.4f, Color.BLACK, Color.WHITE), Converter.threshold(image, 0.4f));
+    }
+
+    static BufferedImage noise(int type, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Random random = new Random(width * 31L + height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    static BufferedImage loadImage(String path) throws IOException {
+        InputStream is = PrintExample.class.getResourceAsStream(path);
+        return ImageIO.read(Objects.requireNonNull(is));
+    }
+
+    static void assertSameImage(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals("Pixel " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+package org.delaunois.brotherql.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PackBitsTest {
+
+    @Test
+    public void testEncode() {
+        byte[] data = bytes(0xAA, 0xAA, 0xAA, 0x80, 0x00, 0x2A, 0xAA, 0xAA, 0xAA, 0xAA, 0x80, 0x00, 0x2A, 0x22,
+                0xAA, 0xAA, 0xAA, 0xAA, 0xAA, 0xAA, 0xAA, 0xAA, 0xAA, 0xAA);
+        byte[] expected = bytes(0xFE, 0xAA, 0x02, 0x80, 0x00, 0x2A, 0xFD, 0xAA, 0x03, 0x80, 0x00, 0x2A, 0x22,
+                0xF7, 0xAA);
+
+        byte[] encoded = new byte[PackBits.maxEncodedLength(data.length)];
+        int length = PackBits.encode(data, 0, data.length, encoded, 0);
+        assertArrayEquals(expected, Arrays.copyOf(encoded, length));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(42);
+        for (int n = 0; n < 200; n++) {
+            byte[] data = new byte[1 + random.nextInt(400)];
+            for (int i = 0; i < data.length; i++) {
+                // Mix of runs and literals
+                data[i] = i > 0 && random.nextInt(3) > 0 ? data[i - 1] : (byte) random.nextInt(4);
+            }
+
+            byte[] encoded = new byte[PackBits.maxEncodedLength(data.length)];
+            int length = PackBits.encode(data, 0, data.length, encoded, 0);
+            byte[] decoded = new byte[data.length];
+            assertEquals(data.length, PackBits.decode(encoded, 0, length, decoded, 0));
+            assertArrayEquals(data, decoded);
+        }
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] b = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            b[i] = (byte) values[i];
+        }
+        return b;
+    }
+
+}
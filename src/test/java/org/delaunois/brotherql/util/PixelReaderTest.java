@@ -0,0 +1,57 @@
+package org.delaunois.brotherql.util;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+public class PixelReaderTest {
+
+    private static final int[] TYPES = {
+            BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_3BYTE_BGR,
+            BufferedImage.TYPE_4BYTE_ABGR,
+            BufferedImage.TYPE_BYTE_GRAY,
+            BufferedImage.TYPE_USHORT_565_RGB
+    };
+
+    @Test
+    public void testReadRowMatchesGetRGB() {
+        for (int type : TYPES) {
+            BufferedImage image = ConverterTest.noise(type, 41, 17);
+            assertSameRows(image, new PixelReader(image));
+            // A sub-image shares the data buffer of its parent, with an offset
+            assertSameRows(image.getSubimage(5, 3, 30, 11), new PixelReader(image.getSubimage(5, 3, 30, 11)));
+        }
+    }
+
+    @Test
+    public void testReadLuminanceWithBrightness() {
+        for (int type : TYPES) {
+            BufferedImage image = ConverterTest.noise(type, 41, 17);
+            PixelReader reader = new PixelReader(image, true, 1.3f);
+            int[] lum = new int[image.getWidth()];
+            for (int y = 0; y < image.getHeight(); y++) {
+                reader.readLuminance(y, lum);
+                for (int x = 0; x < image.getWidth(); x++) {
+                    int expected = Converter.luminance(
+                            Converter.brightness(Converter.rgba2rgb(image.getRGB(x, y)), 1.3f));
+                    assertEquals("Type " + type + ", pixel " + x + "," + y, expected, lum[x]);
+                }
+            }
+        }
+    }
+
+    private static void assertSameRows(BufferedImage image, PixelReader reader) {
+        int[] row = new int[image.getWidth()];
+        for (int y = 0; y < image.getHeight(); y++) {
+            reader.readRow(y, row);
+            for (int x = 0; x < image.getWidth(); x++) {
+                assertEquals("Type " + image.getType() + ", pixel " + x + "," + y, image.getRGB(x, y), row[x]);
+            }
+        }
+    }
+
+}
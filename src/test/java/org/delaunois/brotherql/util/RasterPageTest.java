@@ -0,0 +1,64 @@
+package org.delaunois.brotherql.util;
+
+import org.delaunois.brotherql.BrotherQLMedia;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+public class RasterPageTest {
+
+    @Test
+    public void testLineLayout() {
+        BrotherQLMedia media = BrotherQLMedia.CT_62_720;
+        RasterPage page = new RasterPage(media.bodyWidthPx, 2, media.leftMarginPx, media.rightMarginPx, false);
+        assertEquals(media.rgtSizeBytes, page.getBytesPerLine());
+
+        // Rightmost pixel comes right after the right margin (12 dots)
+        page.set(RasterPage.BLACK, media.bodyWidthPx - 1, 0);
+        // Leftmost pixel comes just before the left margin (12 dots)
+        page.set(RasterPage.BLACK, 0, 1);
+
+        byte[] black = page.getPlane(RasterPage.BLACK);
+        assertEquals((byte) 0x08, black[1]);
+        assertEquals((byte) 0x10, black[page.getLineOffset(1) + 88]);
+        assertTrue(page.isSet(RasterPage.BLACK, 0, 1));
+        assertFalse(page.isSet(RasterPage.BLACK, 0, 0));
+        assertNull(page.getPlane(RasterPage.RED));
+    }
+
+    @Test
+    public void testMergeLayers() {
+        RasterPage page = new RasterPage(16, 1, true);
+        page.set(RasterPage.BLACK, 3, 0);
+        page.set(RasterPage.BLACK, 4, 0);
+        page.set(RasterPage.RED, 4, 0);
+        page.mergeLayers();
+
+        assertTrue(page.isSet(RasterPage.BLACK, 3, 0));
+        assertFalse(page.isSet(RasterPage.BLACK, 4, 0));
+        assertTrue(page.isSet(RasterPage.RED, 4, 0));
+
+        BufferedImage image = page.toImage();
+        assertEquals(0x000000, image.getRGB(3, 0) & 0xFFFFFF);
+        assertEquals(0xFF0000, image.getRGB(4, 0) & 0xFFFFFF);
+        assertEquals(0xFFFFFF, image.getRGB(5, 0) & 0xFFFFFF);
+    }
+
+    @Test
+    public void testSetBits() {
+        RasterPage expected = new RasterPage(75, 1, 3, 6, false);
+        RasterPage page = new RasterPage(75, 1, 3, 6, false);
+        long bits = 0xB5A5_F00F_1234_567L;
+        for (int i = 0; i < 50; i++) {
+            if ((bits >>> i & 1) != 0) {
+                expected.set(RasterPage.BLACK, 20 + i, 0);
+            }
+        }
+        // Bits beyond the count are ignored
+        page.setBits(RasterPage.BLACK, 20, 0, bits | 1L << 50, 50);
+        assertArrayEquals(expected.getPlane(RasterPage.BLACK), page.getPlane(RasterPage.BLACK));
+    }
+
+}
@@ -0,0 +1,86 @@
+package org.delaunois.brotherql.util;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class ThresholdKernelTest {
+
+    // Widths below, equal to and above the vector lengths, with tails shorter than one vector
+    private static final int[] WIDTHS = {1, 3, 7, 8, 15, 16, 17, 31, 33, 100, 257};
+    private static final float[] THRESHOLDS = {0f, 0.2f, 0.35f, 0.5f, 0.66f, 0.8f, 1f, 1.1f};
+
+    @Test
+    public void testScalarMatchesLuminance() throws Exception {
+        check((rgb, lum, width, cut, page, y) -> {
+            ScalarThreshold.thresholdRgb(rgb, 0, width, cut, page, RasterPage.BLACK, y);
+            ScalarThreshold.thresholdLuminance(lum, 0, width, cut, page, RasterPage.RED, y);
+        });
+    }
+
+    @Test
+    public void testVectorMatchesLuminance() throws Exception {
+        assumeTrue("Vector API not available", ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent());
+        Class<?> vector;
+        try {
+            vector = Class.forName("org.delaunois.brotherql.util.VectorThreshold");
+        } catch (ClassNotFoundException e) {
+            assumeTrue("Vector kernel not on the class path", false);
+            return;
+        }
+        Method rgbKernel = vector.getDeclaredMethod("thresholdRgb",
+                int[].class, int.class, int.class, RasterPage.class, int.class, int.class);
+        Method lumKernel = vector.getDeclaredMethod("thresholdLuminance",
+                int[].class, int.class, int.class, RasterPage.class, int.class, int.class);
+
+        check((rgb, lum, width, cut, page, y) -> {
+            rgbKernel.invoke(null, rgb, width, cut, page, RasterPage.BLACK, y);
+            lumKernel.invoke(null, lum, width, cut, page, RasterPage.RED, y);
+        });
+    }
+
+    /**
+     * Threshold random rows with the given kernel, and compare each pixel to the floating point
+     * luminance threshold. The rows mix random colors and grays, whose luminance falls right on the cut-off.
+     */
+    private static void check(Kernel kernel) throws Exception {
+        Random random = new Random(42);
+        for (int width : WIDTHS) {
+            int height = 20;
+            int[][] rgb = new int[height][width];
+            int[][] lum = new int[height][width];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int gray = random.nextInt(256);
+                    rgb[y][x] = random.nextBoolean() ? random.nextInt() : gray << 16 | gray << 8 | gray;
+                    lum[y][x] = Converter.luminance(rgb[y][x]);
+                }
+            }
+
+            for (float threshold : THRESHOLDS) {
+                int cut = Converter.luminanceCut(threshold);
+                RasterPage page = new RasterPage(width, height, true);
+                for (int y = 0; y < height; y++) {
+                    kernel.apply(rgb[y], lum[y], width, cut, page, y);
+                }
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        boolean expected = Converter.luminance(rgb[y][x]) / 255.0f < threshold;
+                        String pixel = "Pixel " + x + "," + y + " width " + width + " threshold " + threshold;
+                        assertEquals(pixel, expected, page.isSet(RasterPage.BLACK, x, y));
+                        assertEquals(pixel, expected, page.isSet(RasterPage.RED, x, y));
+                    }
+                }
+            }
+        }
+    }
+
+    private interface Kernel {
+        void apply(int[] rgb, int[] lum, int width, int cut, RasterPage page, int y) throws Exception;
+    }
+
+}